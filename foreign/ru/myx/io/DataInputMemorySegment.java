@@ -0,0 +1,459 @@
+package ru.myx.io;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/** Off-heap counterpart of DataInputByteArrayFast: reads a MemorySegment (mapped file or arena
+ * memory) with long positions, so files over 2G are parsed in place, without MappedByteBuffer
+ * windows. Besides the relative DataInput methods there are absolute get*(offset) ones, they don't
+ * change the position and may be used concurrently.
+ *
+ * Multi-byte values are big-endian (DataInput format) unless another byte order is given. Relative
+ * reads past the end throw EOFException, absolute ones IndexOutOfBoundsException.
+ *
+ * Java 22+ (java.lang.foreign), built as a separate jar from the foreign/ source root.
+ *
+ * @author myx */
+public final class DataInputMemorySegment extends InputStream implements DataInput {
+
+	/** Maps whole file read-only, mapping lives as long as the arena.
+	 *
+	 * @param channel
+	 * @param arena
+	 * @param order
+	 * @return
+	 * @throws IOException */
+	public static final DataInputMemorySegment map(final FileChannel channel, final Arena arena, final ByteOrder order) throws IOException {
+
+		return new DataInputMemorySegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena), order);
+	}
+
+	private final MemorySegment segment;
+
+	private final long limit;
+
+	private final ValueLayout.OfChar layoutChar;
+
+	private final ValueLayout.OfInt layoutInt;
+
+	private final ValueLayout.OfLong layoutLong;
+
+	private final ValueLayout.OfShort layoutShort;
+
+	private final ByteOrder order;
+
+	private long position;
+
+	private long mark;
+
+	/** UTF bytes are copied here in one go, then decoded */
+	private byte[] bytearr;
+
+	private char[] chararr;
+
+	/** Big-endian
+	 *
+	 * @param segment */
+	public DataInputMemorySegment(final MemorySegment segment) {
+
+		this(segment, ByteOrder.BIG_ENDIAN);
+	}
+
+	/** @param segment
+	 * @param order */
+	public DataInputMemorySegment(final MemorySegment segment, final ByteOrder order) {
+
+		this.segment = segment;
+		this.limit = segment.byteSize();
+		this.order = order;
+		this.layoutChar = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(order);
+		this.layoutShort = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(order);
+		this.layoutInt = ValueLayout.JAVA_INT_UNALIGNED.withOrder(order);
+		this.layoutLong = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(order);
+		this.bytearr = new byte[1024];
+		this.chararr = new char[1024];
+	}
+
+	/** @return bytes remaining, Integer.MAX_VALUE if more */
+	@Override
+	public int available() {
+
+		final long remaining = this.limit - this.position;
+		return remaining > Integer.MAX_VALUE
+			? Integer.MAX_VALUE
+			: (int) remaining;
+	}
+
+	/** Decodes modified UTF-8 (writeUTF format) bytes
+	 *
+	 * @param offset
+	 * @param utflen
+	 * @return
+	 * @throws UTFDataFormatException */
+	private String decodeUTF(final long offset, final int utflen) throws UTFDataFormatException {
+
+		if (this.bytearr.length < utflen) {
+			this.bytearr = new byte[Math.max(utflen, this.bytearr.length * 2)];
+			this.chararr = new char[this.bytearr.length];
+		}
+		final byte[] bytes = this.bytearr;
+		final char[] chararr = this.chararr;
+		MemorySegment.copy(this.segment, ValueLayout.JAVA_BYTE, offset, bytes, 0, utflen);
+		int count = 0;
+		int chararr_count = 0;
+		while (count < utflen) {
+			{
+				/* ASCII run, word at a time where supported */
+				final int run = HelperSWAR.asciiLength(bytes, count, utflen);
+				for (int i = 0; i < run; ++i) {
+					chararr[chararr_count + i] = (char) bytes[count + i];
+				}
+				chararr_count += run;
+				count += run;
+				if (count >= utflen) {
+					break;
+				}
+			}
+			final int c = bytes[count] & 0xff;
+			if ((c & 0xE0) == 0xC0) {
+				/* 110x xxxx 10xx xxxx */
+				count += 2;
+				if (count > utflen) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				final int char2 = bytes[count - 1] & 0xff;
+				if ((char2 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte " + count);
+				}
+				chararr[chararr_count++] = (char) ((c & 0x1F) << 6 | char2 & 0x3F);
+				continue;
+			}
+			if ((c & 0xF0) == 0xE0) {
+				/* 1110 xxxx 10xx xxxx 10xx xxxx */
+				count += 3;
+				if (count > utflen) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				final int char2 = bytes[count - 2] & 0xff;
+				final int char3 = bytes[count - 1] & 0xff;
+				if ((char2 & 0xC0) != 0x80 || (char3 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte " + (count - 1));
+				}
+				chararr[chararr_count++] = (char) ((c & 0x0F) << 12 | (char2 & 0x3F) << 6 | (char3 & 0x3F) << 0);
+				continue;
+			}
+			{
+				/* 10xx xxxx, 1111 xxxx */
+				throw new UTFDataFormatException("malformed input around byte " + count);
+			}
+		}
+		// The number of chars produced may be less than utflen
+		return new String(chararr, 0, chararr_count);
+	}
+
+	/** @param offset
+	 * @return byte at given absolute offset */
+	public final byte getByte(final long offset) {
+
+		return this.segment.get(ValueLayout.JAVA_BYTE, offset);
+	}
+
+	/** @param offset
+	 * @return int at given absolute offset */
+	public final int getInt(final long offset) {
+
+		return this.segment.get(this.layoutInt, offset);
+	}
+
+	/** @return length of the segment */
+	public final long getLength() {
+
+		return this.limit;
+	}
+
+	/** @param offset
+	 * @return long at given absolute offset */
+	public final long getLong(final long offset) {
+
+		return this.segment.get(this.layoutLong, offset);
+	}
+
+	/** @return byte order of multi-byte values */
+	public final ByteOrder getOrder() {
+
+		return this.order;
+	}
+
+	/** @return underlying segment */
+	public final MemorySegment getSegment() {
+
+		return this.segment;
+	}
+
+	/** @param offset
+	 * @return short at given absolute offset */
+	public final short getShort(final long offset) {
+
+		return this.segment.get(this.layoutShort, offset);
+	}
+
+	/** Reads string written by writeUTF() at given absolute offset. Not for concurrent use: decoding
+	 * buffers are shared with readUTF().
+	 *
+	 * @param offset
+	 * @return
+	 * @throws UTFDataFormatException */
+	public final String getUTF(final long offset) throws UTFDataFormatException {
+
+		return this.decodeUTF(offset + 2, this.segment.get(this.layoutShort, offset) & 0xFFFF);
+	}
+
+	@Override
+	public void mark(final int readLimit) {
+
+		this.mark = this.position;
+	}
+
+	@Override
+	public boolean markSupported() {
+
+		return true;
+	}
+
+	/** @return current read position */
+	public final long position() {
+
+		return this.position;
+	}
+
+	/** @param position
+	 *            new read position, 0 .. length */
+	public final void position(final long position) {
+
+		if (position < 0 || position > this.limit) {
+			throw new IndexOutOfBoundsException("position: " + position);
+		}
+		this.position = position;
+	}
+
+	@Override
+	public int read() {
+
+		return this.position < this.limit
+			? this.segment.get(ValueLayout.JAVA_BYTE, this.position++) & 0xFF
+			: -1;
+	}
+
+	@Override
+	public int read(final byte[] b) {
+
+		return this.read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) {
+
+		if ((off | len | off + len | b.length - (off + len)) < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (this.position >= this.limit) {
+			return -1;
+		}
+		final int amount = (int) Math.min(len, this.limit - this.position);
+		MemorySegment.copy(this.segment, ValueLayout.JAVA_BYTE, this.position, b, off, amount);
+		this.position += amount;
+		return amount;
+	}
+
+	@Override
+	public final boolean readBoolean() throws IOException {
+
+		return this.readByte() != 0;
+	}
+
+	@Override
+	public final byte readByte() throws IOException {
+
+		if (this.position >= this.limit) {
+			throw new EOFException();
+		}
+		return this.segment.get(ValueLayout.JAVA_BYTE, this.position++);
+	}
+
+	@Override
+	public final char readChar() throws IOException {
+
+		if (this.limit - this.position < 2) {
+			throw new EOFException();
+		}
+		final char result = this.segment.get(this.layoutChar, this.position);
+		this.position += 2;
+		return result;
+	}
+
+	@Override
+	public final double readDouble() throws IOException {
+
+		return Double.longBitsToDouble(this.readLong());
+	}
+
+	@Override
+	public final float readFloat() throws IOException {
+
+		return Float.intBitsToFloat(this.readInt());
+	}
+
+	@Override
+	public final void readFully(final byte b[]) throws IOException {
+
+		this.readFully(b, 0, b.length);
+	}
+
+	@Override
+	public final void readFully(final byte b[], final int off, final int len) throws IOException {
+
+		if (len < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (this.limit - this.position < len) {
+			throw new EOFException();
+		}
+		MemorySegment.copy(this.segment, ValueLayout.JAVA_BYTE, this.position, b, off, len);
+		this.position += len;
+	}
+
+	@Override
+	public final int readInt() throws IOException {
+
+		if (this.limit - this.position < 4) {
+			throw new EOFException();
+		}
+		final int result = this.segment.get(this.layoutInt, this.position);
+		this.position += 4;
+		return result;
+	}
+
+	@Override
+	@Deprecated
+	public final String readLine() {
+
+		throw new UnsupportedOperationException("deprecated");
+	}
+
+	@Override
+	public final long readLong() throws IOException {
+
+		if (this.limit - this.position < 8) {
+			throw new EOFException();
+		}
+		final long result = this.segment.get(this.layoutLong, this.position);
+		this.position += 8;
+		return result;
+	}
+
+	@Override
+	public final short readShort() throws IOException {
+
+		if (this.limit - this.position < 2) {
+			throw new EOFException();
+		}
+		final short result = this.segment.get(this.layoutShort, this.position);
+		this.position += 2;
+		return result;
+	}
+
+	@Override
+	public final int readUnsignedByte() throws IOException {
+
+		return this.readByte() & 0xFF;
+	}
+
+	@Override
+	public final int readUnsignedShort() throws IOException {
+
+		return this.readShort() & 0xFFFF;
+	}
+
+	/** Length is read in configured byte order */
+	@Override
+	public final String readUTF() throws IOException {
+
+		final int utflen = this.readUnsignedShort();
+		if (this.limit - this.position < utflen) {
+			throw new EOFException("Unexpected end of stream while reading UTF string!");
+		}
+		final String result = this.decodeUTF(this.position, utflen);
+		this.position += utflen;
+		return result;
+	}
+
+	@Override
+	public void reset() {
+
+		this.position = this.mark;
+	}
+
+	@Override
+	public long skip(final long n) {
+
+		if (n <= 0) {
+			return 0;
+		}
+		final long amount = Math.min(n, this.limit - this.position);
+		this.position += amount;
+		return amount;
+	}
+
+	@Override
+	public final int skipBytes(final int n) {
+
+		return (int) this.skip(n);
+	}
+
+	/** Skips a frame (or a byte array) written as writeInt(length) followed by length bytes.
+	 *
+	 * @throws IOException */
+	public final void skipFrame() throws IOException {
+
+		final int length = this.readInt();
+		if (length < 0) {
+			throw new IOException("Negative frame length: " + length);
+		}
+		this.skipFully(length);
+	}
+
+	/** Skips exactly n bytes.
+	 *
+	 * @param n
+	 * @throws EOFException
+	 *             when less than n bytes remain, nothing is skipped then */
+	public final void skipFully(final long n) throws EOFException {
+
+		if (n < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (this.limit - this.position < n) {
+			throw new EOFException();
+		}
+		this.position += n;
+	}
+
+	/** Skips a string written by writeUTF(), only its length is read.
+	 *
+	 * @throws IOException */
+	public final void skipUTF() throws IOException {
+
+		this.skipFully(this.readUnsignedShort());
+	}
+}
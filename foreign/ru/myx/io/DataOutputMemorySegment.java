@@ -0,0 +1,444 @@
+package ru.myx.io;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/** Off-heap equivalent of DataOutputByteArrayReusable: writes to native memory segments allocated
+ * from an Arena, so big staging buffers put no pressure on the GC and can be passed to native code,
+ * channels or copied to mapped files.
+ *
+ * Positions are long. When current segment is full the next one is allocated and chained (each
+ * next one twice as big, up to 1G), written bytes are never moved. Values crossing a segment
+ * boundary are written byte by byte, everything else goes with one access.
+ *
+ * Multi-byte values are big-endian unless another byte order is given (big-endian output is what
+ * DataInput classes expect). Explicit close(): frees the memory when the arena is owned (created by
+ * this instance), otherwise the arena owner does.
+ *
+ * Java 22+ (java.lang.foreign), built as a separate jar from the foreign/ source root.
+ *
+ * @author myx */
+public final class DataOutputMemorySegment extends OutputStream implements DataOutput {
+
+	/** Max size of one segment, keeps every segment viewable as a ByteBuffer */
+	private static final long CHUNK_MAX = 1L << 30;
+
+	private final Arena arena;
+
+	private final boolean arenaOwned;
+
+	private final byte[] bytearr;
+
+	private final ValueLayout.OfChar layoutChar;
+
+	private final ValueLayout.OfInt layoutInt;
+
+	private final ValueLayout.OfLong layoutLong;
+
+	private final ValueLayout.OfShort layoutShort;
+
+	private final ByteOrder order;
+
+	/** Allocated segments, filled ones first */
+	private MemorySegment[] chunks;
+
+	private int chunkCount;
+
+	/** Index of current segment in chunks */
+	private int chunkIndex;
+
+	/** Current segment */
+	private MemorySegment segment;
+
+	/** Position of current segment start */
+	private long base;
+
+	/** Write position in current segment */
+	private long pos;
+
+	/** Own shared arena, 64k first segment, big-endian. */
+	public DataOutputMemorySegment() {
+
+		this(Arena.ofShared(), true, 64 * 1024, ByteOrder.BIG_ENDIAN);
+	}
+
+	/** Caller's arena, segments stay valid after close() until the arena is closed.
+	 *
+	 * @param arena
+	 * @param initialCapacity
+	 *            size of the first segment
+	 * @param order */
+	public DataOutputMemorySegment(final Arena arena, final long initialCapacity, final ByteOrder order) {
+
+		this(arena, false, initialCapacity, order);
+	}
+
+	private DataOutputMemorySegment(final Arena arena, final boolean arenaOwned, final long initialCapacity, final ByteOrder order) {
+
+		this.arena = arena;
+		this.arenaOwned = arenaOwned;
+		this.order = order;
+		this.layoutChar = ValueLayout.JAVA_CHAR_UNALIGNED.withOrder(order);
+		this.layoutShort = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(order);
+		this.layoutInt = ValueLayout.JAVA_INT_UNALIGNED.withOrder(order);
+		this.layoutLong = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(order);
+		this.bytearr = new byte[4 * 1024];
+		this.chunks = new MemorySegment[8];
+		this.segment = arena.allocate(Math.min(Math.max(initialCapacity, 64), DataOutputMemorySegment.CHUNK_MAX), 8);
+		this.chunks[0] = this.segment;
+		this.chunkCount = 1;
+	}
+
+	/** Frees the memory if the arena is owned. Instance is not usable after that. */
+	@Override
+	public final void close() {
+
+		this.segment = null;
+		this.chunks = null;
+		if (this.arenaOwned) {
+			this.arena.close();
+		}
+	}
+
+	@Override
+	public void flush() {
+
+		//
+	}
+
+	/** @return byte order of multi-byte values */
+	public ByteOrder getOrder() {
+
+		return this.order;
+	}
+
+	/** @return current write position */
+	public long getPosition() {
+
+		return this.base + this.pos;
+	}
+
+	/** Written bytes (up to current position) as views of underlying segments, nothing is copied.
+	 * One segment unless the first one overflowed.
+	 *
+	 * @return */
+	public MemorySegment[] getSegments() {
+
+		final MemorySegment[] result = new MemorySegment[this.chunkIndex + 1];
+		for (int i = 0; i < this.chunkIndex; ++i) {
+			result[i] = this.chunks[i];
+		}
+		result[this.chunkIndex] = this.segment.asSlice(0, this.pos);
+		return result;
+	}
+
+	/** Current segment is full: moves to the next one, allocating it if needed */
+	private void nextChunk() {
+
+		this.base += this.segment.byteSize();
+		if (++this.chunkIndex == this.chunkCount) {
+			if (this.chunkCount == this.chunks.length) {
+				final MemorySegment[] chunks = new MemorySegment[this.chunkCount * 2];
+				System.arraycopy(this.chunks, 0, chunks, 0, this.chunkCount);
+				this.chunks = chunks;
+			}
+			this.chunks[this.chunkCount++] = this.arena.allocate(Math.min(this.segment.byteSize() * 2, DataOutputMemorySegment.CHUNK_MAX), 8);
+		}
+		this.segment = this.chunks[this.chunkIndex];
+		this.pos = 0;
+	}
+
+	/** Clears written data, allocated segments are kept for reuse */
+	public void reset() {
+
+		this.chunkIndex = 0;
+		this.segment = this.chunks[0];
+		this.base = 0;
+		this.pos = 0;
+	}
+
+	/** Moves write position within already allocated segments, e.g. to patch a length written
+	 * before.
+	 *
+	 * @param position */
+	public void setPosition(final long position) {
+
+		long base = 0;
+		for (int i = 0; i < this.chunkCount; ++i) {
+			final long size = this.chunks[i].byteSize();
+			if (position < base + size || i == this.chunkCount - 1) {
+				if (position < 0 || position > base + size) {
+					throw new IndexOutOfBoundsException("position: " + position);
+				}
+				this.chunkIndex = i;
+				this.segment = this.chunks[i];
+				this.base = base;
+				this.pos = position - base;
+				return;
+			}
+			base += size;
+		}
+	}
+
+	/** @return copy of written bytes
+	 * @throws IllegalStateException
+	 *             when there are 2G or more */
+	public byte[] toByteArray() {
+
+		final long length = this.getPosition();
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too big for an array: " + length);
+		}
+		final byte[] result = new byte[(int) length];
+		int offset = 0;
+		for (final MemorySegment segment : this.getSegments()) {
+			final int size = (int) segment.byteSize();
+			MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, 0, result, offset, size);
+			offset += size;
+		}
+		return result;
+	}
+
+	@Override
+	public void write(final byte b[]) {
+
+		this.write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(final byte b[], final int off, final int len) {
+
+		int offset = off;
+		int left = len;
+		for (;;) {
+			final long room = this.segment.byteSize() - this.pos;
+			if (room >= left) {
+				MemorySegment.copy(b, offset, this.segment, ValueLayout.JAVA_BYTE, this.pos, left);
+				this.pos += left;
+				return;
+			}
+			MemorySegment.copy(b, offset, this.segment, ValueLayout.JAVA_BYTE, this.pos, (int) room);
+			offset += (int) room;
+			left -= (int) room;
+			this.nextChunk();
+		}
+	}
+
+	/** Writes the specified byte.
+	 *
+	 * @param b
+	 *            the byte to be written. */
+	@Override
+	public void write(final int b) {
+
+		if (this.pos >= this.segment.byteSize()) {
+			this.nextChunk();
+		}
+		this.segment.set(ValueLayout.JAVA_BYTE, this.pos++, (byte) b);
+	}
+
+	@Override
+	public final void writeBoolean(final boolean v) {
+
+		this.write(v
+			? 1
+			: 0);
+	}
+
+	@Override
+	public final void writeByte(final int v) {
+
+		this.write(v);
+	}
+
+	@Override
+	public final void writeBytes(final String s) {
+
+		final int len = s.length();
+		for (int i = 0; i < len; ++i) {
+			this.write((byte) s.charAt(i));
+		}
+	}
+
+	@Override
+	public final void writeChar(final int v) {
+
+		if (this.segment.byteSize() - this.pos < 2) {
+			this.writeSplit(v, 2);
+			return;
+		}
+		this.segment.set(this.layoutChar, this.pos, (char) v);
+		this.pos += 2;
+	}
+
+	@Override
+	public final void writeChars(final String s) {
+
+		final int len = s.length();
+		for (int i = 0; i < len; ++i) {
+			this.writeChar(s.charAt(i));
+		}
+	}
+
+	@Override
+	public final void writeDouble(final double v) {
+
+		this.writeLong(Double.doubleToLongBits(v));
+	}
+
+	@Override
+	public final void writeFloat(final float v) {
+
+		this.writeInt(Float.floatToIntBits(v));
+	}
+
+	@Override
+	public final void writeInt(final int v) {
+
+		if (this.segment.byteSize() - this.pos < 4) {
+			this.writeSplit(v, 4);
+			return;
+		}
+		this.segment.set(this.layoutInt, this.pos, v);
+		this.pos += 4;
+	}
+
+	@Override
+	public final void writeLong(final long v) {
+
+		if (this.segment.byteSize() - this.pos < 8) {
+			this.writeSplit(v, 8);
+			return;
+		}
+		this.segment.set(this.layoutLong, this.pos, v);
+		this.pos += 8;
+	}
+
+	@Override
+	public final void writeShort(final int v) {
+
+		if (this.segment.byteSize() - this.pos < 2) {
+			this.writeSplit(v, 2);
+			return;
+		}
+		this.segment.set(this.layoutShort, this.pos, (short) v);
+		this.pos += 2;
+	}
+
+	/** Value crossing segment boundary, byte by byte in configured order
+	 *
+	 * @param v
+	 * @param size */
+	private void writeSplit(final long v, final int size) {
+
+		if (this.order == ByteOrder.BIG_ENDIAN) {
+			for (int shift = (size - 1) * 8; shift >= 0; shift -= 8) {
+				this.write((int) (v >> shift));
+			}
+		} else {
+			for (int shift = 0; shift < size * 8; shift += 8) {
+				this.write((int) (v >> shift));
+			}
+		}
+	}
+
+	/** Same format as DataOutput.writeUTF(), length is written in configured byte order.
+	 *
+	 * @param str
+	 * @throws UTFDataFormatException */
+	@Override
+	public final void writeUTF(final String str) throws UTFDataFormatException {
+
+		final byte[] bytearr = this.bytearr;
+		final int strlen = str.length();
+		int count = 0;
+		int i = 0;
+		for (; i < strlen; ++i) {
+			final char c = str.charAt(i);
+			if (bytearr.length - count < 3) {
+				break;
+			}
+			if (c >= 0x0001 && c <= 0x007F) {
+				bytearr[count++] = (byte) c;
+				continue;
+			}
+			if (c > 0x07FF) {
+				bytearr[count++] = (byte) (0xE0 | c >> 12 & 0x0F);
+				bytearr[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+				bytearr[count++] = (byte) (0x80 | c >> 0 & 0x3F);
+				continue;
+			}
+			bytearr[count++] = (byte) (0xC0 | c >> 6 & 0x1F);
+			bytearr[count++] = (byte) (0x80 | c >> 0 & 0x3F);
+		}
+		if (i == strlen) {
+			this.writeShort(count);
+			this.write(bytearr, 0, count);
+			return;
+		}
+		int utflen = count;
+		/* use charAt instead of copying String to char array */
+		for (int j = i; j < strlen; ++j) {
+			final char c = str.charAt(j);
+			if (c >= 0x0001 && c <= 0x007F) {
+				++utflen;
+			} else //
+			if (c > 0x07FF) {
+				utflen += 3;
+			} else {
+				utflen += 2;
+			}
+		}
+		if (utflen > 65535) {
+			throw new UTFDataFormatException("encoded string too long: " + utflen + " bytes");
+		}
+		this.writeShort(utflen);
+		for (;;) {
+			this.write(bytearr, 0, count);
+			if (i == strlen) {
+				return;
+			}
+			count = 0;
+			for (; i < strlen && bytearr.length - count >= 3; ++i) {
+				final char c = str.charAt(i);
+				if (c >= 0x0001 && c <= 0x007F) {
+					bytearr[count++] = (byte) c;
+					continue;
+				}
+				if (c > 0x07FF) {
+					bytearr[count++] = (byte) (0xE0 | c >> 12 & 0x0F);
+					bytearr[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+					bytearr[count++] = (byte) (0x80 | c >> 0 & 0x3F);
+					continue;
+				}
+				bytearr[count++] = (byte) (0xC0 | c >> 6 & 0x1F);
+				bytearr[count++] = (byte) (0x80 | c >> 0 & 0x3F);
+			}
+		}
+	}
+
+	/** Writes written bytes (up to current position) to given channel, nothing is copied.
+	 *
+	 * @param channel
+	 * @return number of bytes written
+	 * @throws IOException */
+	public long writeTo(final WritableByteChannel channel) throws IOException {
+
+		long written = 0;
+		for (final MemorySegment segment : this.getSegments()) {
+			final ByteBuffer buffer = segment.asByteBuffer();
+			while (buffer.hasRemaining()) {
+				written += channel.write(buffer);
+			}
+		}
+		return written;
+	}
+}
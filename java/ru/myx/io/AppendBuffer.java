@@ -0,0 +1,394 @@
+package ru.myx.io;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Multi-producer single-consumer append buffer (journal staging) over a byte ring. Producers don't
+ * lock: reserve() claims space with one atomic fetch-and-add, the record is serialized straight into
+ * the ring through the returned DataOutput view, commit() makes it visible. One drainer thread
+ * calls drainTo() to write committed records to the sink, in reservation order.
+ *
+ * Producers never wait for each other: commit() publishes a per-record mark (payload end, written
+ * last with lazySet) and returns. The drainer scans marks from where it stopped and writes every
+ * committed record up to the first one that is not, adjacent records are written with one call.
+ * abort() marks the record as skipped instead, the drainer steps over it: a producer failing
+ * between reserve() and commit() must call it (finally), a record neither committed nor aborted
+ * holds the drainer back for good, later records stay in the ring.
+ *
+ * Records start at 8-byte boundaries (marks are kept one per 8 ring bytes), padding is not
+ * drained. reserve() waits while the ring has no room, until the drainer frees it.
+ *
+ * @author myx */
+public final class AppendBuffer {
+
+	/** DataOutput view of reserved space, reused by the reserving thread. Writes beyond reserved
+	 * length throw IndexOutOfBoundsException. */
+	public final class Reservation extends OutputStream implements DataOutput {
+
+		private long start;
+
+		private long end;
+
+		private long pos;
+
+		Reservation() {
+
+			//
+		}
+
+		/** Drops the record: the drainer skips it, nothing of it is written to the sink. */
+		public void abort() {
+
+			AppendBuffer.this.mark(this.start, this.end, AppendBuffer.MARK_SKIPPED);
+		}
+
+		/** Makes the record visible to the drainer, does not wait. Unwritten reserved bytes are
+		 * zeros. */
+		public void commit() {
+
+			final byte[] ring = AppendBuffer.this.ring;
+			final int mask = AppendBuffer.this.mask;
+			for (; this.pos < this.end; ++this.pos) {
+				ring[(int) this.pos & mask] = 0;
+			}
+			AppendBuffer.this.mark(this.start, this.end, 0);
+		}
+
+		/** @return reserved bytes not written yet */
+		public int getRemaining() {
+
+			return (int) (this.end - this.pos);
+		}
+
+		/** @return position of the record in the appended stream */
+		public long getStart() {
+
+			return this.start;
+		}
+
+		@Override
+		public void write(final byte[] b) {
+
+			this.write(b, 0, b.length);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+
+			if (len > this.end - this.pos) {
+				throw new IndexOutOfBoundsException("reserved: " + (this.end - this.start) + ", overflow by " + (len - (this.end - this.pos)));
+			}
+			final byte[] ring = AppendBuffer.this.ring;
+			final int start = (int) this.pos & AppendBuffer.this.mask;
+			final int first = Math.min(len, ring.length - start);
+			System.arraycopy(b, off, ring, start, first);
+			if (first < len) {
+				System.arraycopy(b, off + first, ring, 0, len - first);
+			}
+			this.pos += len;
+		}
+
+		@Override
+		public void write(final int b) {
+
+			if (this.pos >= this.end) {
+				throw new IndexOutOfBoundsException("reserved: " + (this.end - this.start));
+			}
+			AppendBuffer.this.ring[(int) this.pos++ & AppendBuffer.this.mask] = (byte) b;
+		}
+
+		@Override
+		public void writeBoolean(final boolean v) {
+
+			this.write(v
+				? 1
+				: 0);
+		}
+
+		@Override
+		public void writeByte(final int v) {
+
+			this.write(v);
+		}
+
+		@Override
+		public void writeBytes(final String s) {
+
+			final int len = s.length();
+			for (int i = 0; i < len; ++i) {
+				this.write((byte) s.charAt(i));
+			}
+		}
+
+		@Override
+		public void writeChar(final int v) {
+
+			this.write(v >>> 8 & 0xFF);
+			this.write(v >>> 0 & 0xFF);
+		}
+
+		@Override
+		public void writeChars(final String s) {
+
+			final int len = s.length();
+			for (int i = 0; i < len; ++i) {
+				this.writeChar(s.charAt(i));
+			}
+		}
+
+		@Override
+		public void writeDouble(final double v) {
+
+			this.writeLong(Double.doubleToLongBits(v));
+		}
+
+		@Override
+		public void writeFloat(final float v) {
+
+			this.writeInt(Float.floatToIntBits(v));
+		}
+
+		@Override
+		public void writeInt(final int v) {
+
+			this.write(v >>> 24 & 0xFF);
+			this.write(v >>> 16 & 0xFF);
+			this.write(v >>> 8 & 0xFF);
+			this.write(v >>> 0 & 0xFF);
+		}
+
+		@Override
+		public void writeLong(final long v) {
+
+			this.writeInt((int) (v >>> 32));
+			this.writeInt((int) v);
+		}
+
+		@Override
+		public void writeShort(final int v) {
+
+			this.write(v >>> 8 & 0xFF);
+			this.write(v >>> 0 & 0xFF);
+		}
+
+		@Override
+		public void writeUTF(final String str) throws UTFDataFormatException {
+
+			final int utflen = AppendBuffer.utfLength(str);
+			if (utflen > 65535) {
+				throw new UTFDataFormatException("encoded string too long: " + utflen + " bytes");
+			}
+			this.writeShort(utflen);
+			final int strlen = str.length();
+			for (int i = 0; i < strlen; ++i) {
+				final char c = str.charAt(i);
+				if (c >= 0x0001 && c <= 0x007F) {
+					this.write(c);
+					continue;
+				}
+				if (c > 0x07FF) {
+					this.write(0xE0 | c >> 12 & 0x0F);
+					this.write(0x80 | c >> 6 & 0x3F);
+					this.write(0x80 | c >> 0 & 0x3F);
+					continue;
+				}
+				this.write(0xC0 | c >> 6 & 0x1F);
+				this.write(0x80 | c >> 0 & 0x3F);
+			}
+		}
+	}
+
+	/** Mark flag: record has no payload */
+	private static final long MARK_EMPTY = 2;
+
+	/** Mark flag: record is aborted */
+	private static final long MARK_SKIPPED = 1;
+
+	/** @param length
+	 * @return ring space taken by a record of given length, padding included */
+	private static final int footprint(final int length) {
+
+		return length == 0
+			? 8
+			: length + 7 & ~7;
+	}
+
+	/** @param str
+	 * @return number of bytes writeUTF() encodes given string to, without 2 bytes of length */
+	public static final int utfLength(final String str) {
+
+		final int strlen = str.length();
+		int utflen = strlen;
+		for (int i = 0; i < strlen; ++i) {
+			final char c = str.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				continue;
+			}
+			utflen += c > 0x07FF
+				? 2
+				: 1;
+		}
+		return utflen;
+	}
+
+	private final byte[] ring;
+
+	private final int mask;
+
+	/** End of reserved space, fetch-and-add by producers */
+	private final AtomicLong reserved;
+
+	/** End of drained space (start of the next record to drain), written by the drainer only */
+	private final AtomicLong drained;
+
+	/** One per 8 ring bytes, for the record starting there: payload end << 2 | MARK_EMPTY |
+	 * MARK_SKIPPED. Marks left from earlier laps are never above (start << 2 | MARK_SKIPPED). */
+	private final AtomicLongArray marks;
+
+	private final ThreadLocal<Reservation> reservations;
+
+	/** @param capacity
+	 *            ring size, rounded up to a power of two, 1G at most, limits the size of one record */
+	public AppendBuffer(final int capacity) {
+
+		if (capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity is too big: " + capacity);
+		}
+		final int size = capacity <= 16
+			? 16
+			: Integer.highestOneBit(capacity - 1) << 1;
+		this.ring = new byte[size];
+		this.mask = size - 1;
+		this.reserved = new AtomicLong();
+		this.drained = new AtomicLong();
+		this.marks = new AtomicLongArray(size >> 3);
+		this.reservations = new ThreadLocal<>();
+	}
+
+	/** Writes committed records not drained yet to given sink, up to the first record that is
+	 * neither committed nor aborted. Adjacent records go with one write, or two when they wrap
+	 * around the ring end. Single drainer thread only.
+	 *
+	 * @param sink
+	 * @return number of bytes written, 0 when there is nothing committed
+	 * @throws IOException */
+	public long drainTo(final OutputStream sink) throws IOException {
+
+		final long from = this.drained.get();
+		final AtomicLongArray marks = this.marks;
+		long position = from;
+		long runStart = from;
+		long runEnd = from;
+		long written = 0;
+		for (;;) {
+			final long mark = marks.get(((int) position & this.mask) >> 3);
+			if (mark < (position << 2 | AppendBuffer.MARK_EMPTY)) {
+				break;
+			}
+			final long end = mark >>> 2;
+			if ((mark & AppendBuffer.MARK_SKIPPED) == 0 && end > position) {
+				if (runEnd != position) {
+					written += this.write(sink, runStart, runEnd);
+					runStart = position;
+				}
+				runEnd = end;
+			}
+			position += AppendBuffer.footprint((int) (end - position));
+		}
+		written += this.write(sink, runStart, runEnd);
+		if (position != from) {
+			this.drained.lazySet(position);
+		}
+		return written;
+	}
+
+	/** @return ring size */
+	public int getCapacity() {
+
+		return this.ring.length;
+	}
+
+	/** @return ring bytes reserved and not drained yet: records not committed yet and padding
+	 *         included, 0 when everything is drained */
+	public long getPending() {
+
+		return this.reserved.get() - this.drained.get();
+	}
+
+	/** @param start
+	 * @param end
+	 * @param flags */
+	private void mark(final long start, final long end, final long flags) {
+
+		this.marks.lazySet(((int) start & this.mask) >> 3, end << 2 | (end == start
+			? AppendBuffer.MARK_EMPTY
+			: 0) | flags);
+	}
+
+	/** Writes ring bytes of given stream positions
+	 *
+	 * @param sink
+	 * @param from
+	 * @param to
+	 * @return number of bytes written
+	 * @throws IOException */
+	private int write(final OutputStream sink, final long from, final long to) throws IOException {
+
+		if (to == from) {
+			return 0;
+		}
+		final byte[] ring = this.ring;
+		final int start = (int) from & this.mask;
+		final int length = (int) (to - from);
+		final int first = Math.min(length, ring.length - start);
+		sink.write(ring, start, first);
+		if (first < length) {
+			sink.write(ring, 0, length - first);
+		}
+		return length;
+	}
+
+	/** Reserves space for a record of given length, waits while the ring has no room. Returned view
+	 * is reused by the calling thread: one open reservation per thread, it must end with commit() or
+	 * abort(). When interrupted, still waits for room (the range is claimed already), marks the
+	 * record skipped and throws.
+	 *
+	 * @param length
+	 * @return
+	 * @throws IOException */
+	public Reservation reserve(final int length) throws IOException {
+
+		if (length < 0 || length > this.ring.length) {
+			throw new IllegalArgumentException("length: " + length + ", capacity: " + this.ring.length);
+		}
+		final long start = this.reserved.getAndAdd(AppendBuffer.footprint(length));
+		final long end = start + length;
+		final long limit = start + AppendBuffer.footprint(length) - this.ring.length;
+		InterruptedIOException interrupted = null;
+		for (int attempt = 0; this.drained.get() < limit; ++attempt) {
+			try {
+				HelperWait.idle(this, attempt, 100, 10, 100000L);
+			} catch (final InterruptedIOException e) {
+				interrupted = e;
+			}
+		}
+		if (interrupted != null) {
+			this.mark(start, end, AppendBuffer.MARK_SKIPPED);
+			throw interrupted;
+		}
+		Reservation reservation = this.reservations.get();
+		if (reservation == null) {
+			reservation = new Reservation();
+			this.reservations.set(reservation);
+		}
+		reservation.start = start;
+		reservation.end = end;
+		reservation.pos = start;
+		return reservation;
+	}
+}
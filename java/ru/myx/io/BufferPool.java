@@ -0,0 +1,291 @@
+package ru.myx.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Process-wide pool of byte[] and char[] buffers in power-of-two size classes, 1k .. 1M elements.
+ * Borrowed array is at least as long as requested, length is rounded up to the class size.
+ * Requests over 1M are allocated exactly and not pooled.
+ *
+ * Every class has a per-thread cache of one array (classes up to 64k only, so idle threads don't
+ * pin big arrays) in front of a shared lock-free slot array: borrow takes a slot with getAndSet,
+ * release puts an array with compareAndSet, no locks, no node allocation. Shared slots hold up to
+ * 1M elements per class (at least 4 arrays, at most 64), arrays released beyond that are dropped.
+ *
+ * Released arrays must not be used by the caller any more, the same array goes to the next borrower
+ * as is, not cleared. Releasing arrays not borrowed from the pool is fine: arrays of other lengths
+ * are ignored.
+ *
+ * Direct ByteBuffers come in one size, DIRECT_CAPACITY. The pool owns up to 64 of them, allocated
+ * by borrowDirect() and kept for good, each with a free flag. releaseDirect() takes back only those
+ * very objects, once per borrow: duplicates, slices, read-only views, foreign buffers and repeated
+ * releases are ignored. A buffer released and then used or released again by its old holder after
+ * someone else borrowed it can't be told apart, that is still the caller's bug.
+ *
+ * Pooling is on unless the JVM is started with -Dru.myx.io.pool=false, then borrow allocates and
+ * release does nothing.
+ *
+ * @author myx */
+public final class BufferPool {
+
+	/** Per-thread arrays, one per cached class */
+	private static final class Cache {
+
+		final byte[][] bytes = new byte[BufferPool.CACHED_CLASSES][];
+
+		final char[][] chars = new char[BufferPool.CACHED_CLASSES][];
+
+		Cache() {
+
+			//
+		}
+	}
+
+	/** Size of pooled direct buffers */
+	public static final int DIRECT_CAPACITY = 16 * 1024;
+
+	/** Pooling switch, -Dru.myx.io.pool=false turns it off */
+	public static final boolean ENABLED = !"false".equals(System.getProperty("ru.myx.io.pool"));
+
+	private static final int MIN_SHIFT = 10;
+
+	private static final int MAX_SHIFT = 20;
+
+	private static final int CLASSES = BufferPool.MAX_SHIFT - BufferPool.MIN_SHIFT + 1;
+
+	/** 1k .. 64k */
+	private static final int CACHED_CLASSES = 7;
+
+	private static final AtomicReferenceArray<byte[]>[] SHARED_BYTES = BufferPool.createSlots();
+
+	private static final AtomicReferenceArray<char[]>[] SHARED_CHARS = BufferPool.createSlots();
+
+	/** Direct buffers owned by the pool, slots are filled once and never cleared */
+	private static final AtomicReferenceArray<ByteBuffer> DIRECT = new AtomicReferenceArray<>(64);
+
+	/** 1 when DIRECT buffer of the same index is in the pool, 0 when borrowed */
+	private static final AtomicIntegerArray DIRECT_FREE = new AtomicIntegerArray(64);
+
+	private static final ThreadLocal<Cache> CACHE = new ThreadLocal<Cache>() {
+
+		@Override
+		protected Cache initialValue() {
+
+			return new Cache();
+		}
+	};
+
+	/** @param length
+	 * @return byte array of at least given length */
+	public static final byte[] borrowBytes(final int length) {
+
+		final int index = BufferPool.classIndex(length);
+		if (index == -1 || !BufferPool.ENABLED) {
+			return new byte[length];
+		}
+		if (index < BufferPool.CACHED_CLASSES) {
+			final byte[][] cache = BufferPool.CACHE.get().bytes;
+			final byte[] cached = cache[index];
+			if (cached != null) {
+				cache[index] = null;
+				return cached;
+			}
+		}
+		final AtomicReferenceArray<byte[]> slots = BufferPool.SHARED_BYTES[index];
+		for (int i = slots.length() - 1; i >= 0; --i) {
+			if (slots.get(i) != null) {
+				final byte[] shared = slots.getAndSet(i, null);
+				if (shared != null) {
+					return shared;
+				}
+			}
+		}
+		return new byte[1 << index + BufferPool.MIN_SHIFT];
+	}
+
+	/** For buffers whose length is a limit, not just a capacity: pooled only when length is a class
+	 * size.
+	 *
+	 * @param length
+	 * @return byte array of exactly given length */
+	public static final byte[] borrowBytesExact(final int length) {
+
+		return BufferPool.releaseIndex(length) == -1
+			? new byte[length]
+			: BufferPool.borrowBytes(length);
+	}
+
+	/** @param length
+	 * @return char array of at least given length */
+	public static final char[] borrowChars(final int length) {
+
+		final int index = BufferPool.classIndex(length);
+		if (index == -1 || !BufferPool.ENABLED) {
+			return new char[length];
+		}
+		if (index < BufferPool.CACHED_CLASSES) {
+			final char[][] cache = BufferPool.CACHE.get().chars;
+			final char[] cached = cache[index];
+			if (cached != null) {
+				cache[index] = null;
+				return cached;
+			}
+		}
+		final AtomicReferenceArray<char[]> slots = BufferPool.SHARED_CHARS[index];
+		for (int i = slots.length() - 1; i >= 0; --i) {
+			if (slots.get(i) != null) {
+				final char[] shared = slots.getAndSet(i, null);
+				if (shared != null) {
+					return shared;
+				}
+			}
+		}
+		return new char[1 << index + BufferPool.MIN_SHIFT];
+	}
+
+	/** @return cleared big-endian direct buffer of DIRECT_CAPACITY bytes */
+	public static final ByteBuffer borrowDirect() {
+
+		if (!BufferPool.ENABLED) {
+			return ByteBuffer.allocateDirect(BufferPool.DIRECT_CAPACITY);
+		}
+		final AtomicReferenceArray<ByteBuffer> owned = BufferPool.DIRECT;
+		final AtomicIntegerArray free = BufferPool.DIRECT_FREE;
+		for (int i = owned.length() - 1; i >= 0; --i) {
+			if (free.get(i) == 1 && free.compareAndSet(i, 1, 0)) {
+				final ByteBuffer buffer = owned.get(i);
+				buffer.clear();
+				return buffer;
+			}
+		}
+		final ByteBuffer created = ByteBuffer.allocateDirect(BufferPool.DIRECT_CAPACITY);
+		for (int i = 0; i < owned.length(); ++i) {
+			if (owned.get(i) == null && owned.compareAndSet(i, null, created)) {
+				/** owned from now on, borrowed */
+				break;
+			}
+		}
+		return created;
+	}
+
+	/** @param length
+	 * @return size class index for a borrow of given length, -1 when not pooled */
+	private static final int classIndex(final int length) {
+
+		if (length <= 1 << BufferPool.MIN_SHIFT) {
+			return 0;
+		}
+		if (length > 1 << BufferPool.MAX_SHIFT) {
+			return -1;
+		}
+		return 32 - Integer.numberOfLeadingZeros(length - 1) - BufferPool.MIN_SHIFT;
+	}
+
+	@SuppressWarnings({
+			"unchecked", "rawtypes"
+	})
+	private static final <T> AtomicReferenceArray<T>[] createSlots() {
+
+		final AtomicReferenceArray<T>[] result = new AtomicReferenceArray[BufferPool.CLASSES];
+		for (int i = 0; i < BufferPool.CLASSES; ++i) {
+			result[i] = new AtomicReferenceArray<>(Math.max(4, Math.min(64, 1 << BufferPool.MAX_SHIFT - BufferPool.MIN_SHIFT - i)));
+		}
+		return result;
+	}
+
+	/** @param length
+	 * @return size class index of an array of given length, -1 when not a pooled size */
+	private static final int releaseIndex(final int length) {
+
+		if (length < 1 << BufferPool.MIN_SHIFT || length > 1 << BufferPool.MAX_SHIFT || (length & length - 1) != 0) {
+			return -1;
+		}
+		return Integer.numberOfTrailingZeros(length) - BufferPool.MIN_SHIFT;
+	}
+
+	/** Gives the array back, caller must not use it any more.
+	 *
+	 * @param array
+	 *            NULL is ignored */
+	public static final void releaseBytes(final byte[] array) {
+
+		if (array == null || !BufferPool.ENABLED) {
+			return;
+		}
+		final int index = BufferPool.releaseIndex(array.length);
+		if (index == -1) {
+			return;
+		}
+		if (index < BufferPool.CACHED_CLASSES) {
+			final byte[][] cache = BufferPool.CACHE.get().bytes;
+			if (cache[index] == null) {
+				cache[index] = array;
+				return;
+			}
+		}
+		final AtomicReferenceArray<byte[]> slots = BufferPool.SHARED_BYTES[index];
+		for (int i = 0; i < slots.length(); ++i) {
+			if (slots.get(i) == null && slots.compareAndSet(i, null, array)) {
+				return;
+			}
+		}
+	}
+
+	/** Gives the array back, caller must not use it any more.
+	 *
+	 * @param array
+	 *            NULL is ignored */
+	public static final void releaseChars(final char[] array) {
+
+		if (array == null || !BufferPool.ENABLED) {
+			return;
+		}
+		final int index = BufferPool.releaseIndex(array.length);
+		if (index == -1) {
+			return;
+		}
+		if (index < BufferPool.CACHED_CLASSES) {
+			final char[][] cache = BufferPool.CACHE.get().chars;
+			if (cache[index] == null) {
+				cache[index] = array;
+				return;
+			}
+		}
+		final AtomicReferenceArray<char[]> slots = BufferPool.SHARED_CHARS[index];
+		for (int i = 0; i < slots.length(); ++i) {
+			if (slots.get(i) == null && slots.compareAndSet(i, null, array)) {
+				return;
+			}
+		}
+	}
+
+	/** Gives the direct buffer back, once per borrowDirect(), caller must not use it (or its views)
+	 * any more.
+	 *
+	 * @param buffer
+	 *            NULL, buffers not owned by the pool (views of pooled ones included) and buffers
+	 *            already released are ignored */
+	public static final void releaseDirect(final ByteBuffer buffer) {
+
+		if (buffer == null || !BufferPool.ENABLED) {
+			return;
+		}
+		final AtomicReferenceArray<ByteBuffer> owned = BufferPool.DIRECT;
+		for (int i = 0; i < owned.length(); ++i) {
+			if (owned.get(i) == buffer) {
+				if (BufferPool.DIRECT_FREE.get(i) == 0) {
+					buffer.order(ByteOrder.BIG_ENDIAN);
+					BufferPool.DIRECT_FREE.set(i, 1);
+				}
+				return;
+			}
+		}
+	}
+
+	private BufferPool() {
+
+		// prevent
+	}
+}
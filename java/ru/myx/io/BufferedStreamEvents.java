@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package ru.myx.io;
+
+/** Hooks for JFR events on operations of streams underlying DataInputBufferedReusable and
+ * DataOutputBufferedReusable.
+ *
+ * This is the Java 8 version, it does nothing. Java 11+ version (java11 source root, packed as
+ * multi-release) emits 'ru.myx.io.UnderlyingIO' events.
+ *
+ * @author myx */
+final class BufferedStreamEvents {
+
+	/** Underlying stream closed */
+	static final String OPERATION_CLOSE = "close";
+
+	/** Underlying stream flushed */
+	static final String OPERATION_FLUSH = "flush";
+
+	/** Underlying stream read */
+	static final String OPERATION_READ = "read";
+
+	/** Underlying stream written */
+	static final String OPERATION_WRITE = "write";
+
+	/** Not a compile-time constant on purpose: callers must read the value of the class version
+	 * loaded at runtime. */
+	static final boolean ENABLED;
+
+	static {
+		ENABLED = false;
+	}
+
+	/** @return event to pass to end() or NULL when events are not recorded */
+	static final Object begin() {
+
+		return null;
+	}
+
+	/** @param event
+	 *            non-NULL result of begin()
+	 * @param operation
+	 * @param bytes
+	 * @param stream */
+	static final void end(final Object event, final String operation, final long bytes, final Object stream) {
+
+		//
+	}
+
+	private BufferedStreamEvents() {
+
+		// prevent
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ *
+ */
+package ru.myx.io;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Process-wide statistics of buffered stream internals: how often DataInputBufferedReusable
+ * fills its buffer and how much each fill returns, how often reads bypass the buffer, how often
+ * DataOutputBufferedReusable flushes its buffer versus writes large arrays directly, and how often
+ * readUTF has to allocate.
+ *
+ * Collection is off unless the JVM is started with -Dru.myx.io.statistics=true. The switch is a
+ * static final, so disabled counters are folded away by the JIT.
+ *
+ * Instances are immutable snapshots, see snapshot(). Live values are available through the
+ * registrable MXBean, see register().
+ *
+ * @author myx */
+public final class BufferedStreamStatistics implements BufferedStreamStatisticsMXBean {
+
+	private static final class Live implements BufferedStreamStatisticsMXBean {
+
+		Live() {
+
+			//
+		}
+
+		@Override
+		public double getBytesPerFill() {
+
+			return BufferedStreamStatistics.average(BufferedStreamStatistics.FILL_BYTES.sum(), BufferedStreamStatistics.FILL_COUNT.sum());
+		}
+
+		@Override
+		public double getBytesPerFlush() {
+
+			return BufferedStreamStatistics.average(BufferedStreamStatistics.FLUSH_BYTES.sum(), BufferedStreamStatistics.FLUSH_COUNT.sum());
+		}
+
+		@Override
+		public long getFillBytes() {
+
+			return BufferedStreamStatistics.FILL_BYTES.sum();
+		}
+
+		@Override
+		public long getFillCount() {
+
+			return BufferedStreamStatistics.FILL_COUNT.sum();
+		}
+
+		@Override
+		public long getFlushBytes() {
+
+			return BufferedStreamStatistics.FLUSH_BYTES.sum();
+		}
+
+		@Override
+		public long getFlushCount() {
+
+			return BufferedStreamStatistics.FLUSH_COUNT.sum();
+		}
+
+		@Override
+		public long getReadBypassBytes() {
+
+			return BufferedStreamStatistics.READ_BYPASS_BYTES.sum();
+		}
+
+		@Override
+		public long getReadBypassCount() {
+
+			return BufferedStreamStatistics.READ_BYPASS_COUNT.sum();
+		}
+
+		@Override
+		public long getUtfFallbackCount() {
+
+			return BufferedStreamStatistics.UTF_FALLBACK_COUNT.sum();
+		}
+
+		@Override
+		public long getWriteBypassBytes() {
+
+			return BufferedStreamStatistics.WRITE_BYPASS_BYTES.sum();
+		}
+
+		@Override
+		public long getWriteBypassCount() {
+
+			return BufferedStreamStatistics.WRITE_BYPASS_COUNT.sum();
+		}
+
+		@Override
+		public boolean isEnabled() {
+
+			return BufferedStreamStatistics.ENABLED;
+		}
+	}
+
+	/** Statistics switch, -Dru.myx.io.statistics=true */
+	public static final boolean ENABLED = Boolean.getBoolean("ru.myx.io.statistics");
+
+	/** Object name used by register() */
+	public static final String OBJECT_NAME = "ru.myx.io:type=BufferedStreamStatistics";
+
+	static final LongAdder FILL_BYTES = new LongAdder();
+
+	static final LongAdder FILL_COUNT = new LongAdder();
+
+	static final LongAdder FLUSH_BYTES = new LongAdder();
+
+	static final LongAdder FLUSH_COUNT = new LongAdder();
+
+	static final LongAdder READ_BYPASS_BYTES = new LongAdder();
+
+	static final LongAdder READ_BYPASS_COUNT = new LongAdder();
+
+	static final LongAdder UTF_FALLBACK_COUNT = new LongAdder();
+
+	static final LongAdder WRITE_BYPASS_BYTES = new LongAdder();
+
+	static final LongAdder WRITE_BYPASS_COUNT = new LongAdder();
+
+	static final double average(final long bytes, final long count) {
+
+		return count == 0
+			? 0
+			: (double) bytes / count;
+	}
+
+	/** Clears all counters */
+	public static final void doReset() {
+
+		BufferedStreamStatistics.FILL_BYTES.reset();
+		BufferedStreamStatistics.FILL_COUNT.reset();
+		BufferedStreamStatistics.FLUSH_BYTES.reset();
+		BufferedStreamStatistics.FLUSH_COUNT.reset();
+		BufferedStreamStatistics.READ_BYPASS_BYTES.reset();
+		BufferedStreamStatistics.READ_BYPASS_COUNT.reset();
+		BufferedStreamStatistics.UTF_FALLBACK_COUNT.reset();
+		BufferedStreamStatistics.WRITE_BYPASS_BYTES.reset();
+		BufferedStreamStatistics.WRITE_BYPASS_COUNT.reset();
+	}
+
+	static final void recordFill(final int read) {
+
+		BufferedStreamStatistics.FILL_COUNT.increment();
+		if (read > 0) {
+			BufferedStreamStatistics.FILL_BYTES.add(read);
+		}
+	}
+
+	static final void recordFlush(final int written) {
+
+		BufferedStreamStatistics.FLUSH_COUNT.increment();
+		BufferedStreamStatistics.FLUSH_BYTES.add(written);
+	}
+
+	static final void recordReadBypass(final int read) {
+
+		BufferedStreamStatistics.READ_BYPASS_COUNT.increment();
+		if (read > 0) {
+			BufferedStreamStatistics.READ_BYPASS_BYTES.add(read);
+		}
+	}
+
+	static final void recordUtfFallback() {
+
+		BufferedStreamStatistics.UTF_FALLBACK_COUNT.increment();
+	}
+
+	static final void recordWriteBypass(final int written) {
+
+		BufferedStreamStatistics.WRITE_BYPASS_COUNT.increment();
+		BufferedStreamStatistics.WRITE_BYPASS_BYTES.add(written);
+	}
+
+	/** Registers live statistics MXBean with the platform MBean server under OBJECT_NAME, does
+	 * nothing when already registered.
+	 *
+	 * @throws JMException */
+	public static final void register() throws JMException {
+
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName name = new ObjectName(BufferedStreamStatistics.OBJECT_NAME);
+		synchronized (BufferedStreamStatistics.class) {
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new Live(), name);
+			}
+		}
+	}
+
+	/** @return current values of all counters */
+	public static final BufferedStreamStatistics snapshot() {
+
+		return new BufferedStreamStatistics();
+	}
+
+	private final long fillBytes;
+
+	private final long fillCount;
+
+	private final long flushBytes;
+
+	private final long flushCount;
+
+	private final long readBypassBytes;
+
+	private final long readBypassCount;
+
+	private final long utfFallbackCount;
+
+	private final long writeBypassBytes;
+
+	private final long writeBypassCount;
+
+	private BufferedStreamStatistics() {
+
+		this.fillBytes = BufferedStreamStatistics.FILL_BYTES.sum();
+		this.fillCount = BufferedStreamStatistics.FILL_COUNT.sum();
+		this.flushBytes = BufferedStreamStatistics.FLUSH_BYTES.sum();
+		this.flushCount = BufferedStreamStatistics.FLUSH_COUNT.sum();
+		this.readBypassBytes = BufferedStreamStatistics.READ_BYPASS_BYTES.sum();
+		this.readBypassCount = BufferedStreamStatistics.READ_BYPASS_COUNT.sum();
+		this.utfFallbackCount = BufferedStreamStatistics.UTF_FALLBACK_COUNT.sum();
+		this.writeBypassBytes = BufferedStreamStatistics.WRITE_BYPASS_BYTES.sum();
+		this.writeBypassCount = BufferedStreamStatistics.WRITE_BYPASS_COUNT.sum();
+	}
+
+	@Override
+	public double getBytesPerFill() {
+
+		return BufferedStreamStatistics.average(this.fillBytes, this.fillCount);
+	}
+
+	@Override
+	public double getBytesPerFlush() {
+
+		return BufferedStreamStatistics.average(this.flushBytes, this.flushCount);
+	}
+
+	@Override
+	public long getFillBytes() {
+
+		return this.fillBytes;
+	}
+
+	@Override
+	public long getFillCount() {
+
+		return this.fillCount;
+	}
+
+	@Override
+	public long getFlushBytes() {
+
+		return this.flushBytes;
+	}
+
+	@Override
+	public long getFlushCount() {
+
+		return this.flushCount;
+	}
+
+	@Override
+	public long getReadBypassBytes() {
+
+		return this.readBypassBytes;
+	}
+
+	@Override
+	public long getReadBypassCount() {
+
+		return this.readBypassCount;
+	}
+
+	@Override
+	public long getUtfFallbackCount() {
+
+		return this.utfFallbackCount;
+	}
+
+	@Override
+	public long getWriteBypassBytes() {
+
+		return this.writeBypassBytes;
+	}
+
+	@Override
+	public long getWriteBypassCount() {
+
+		return this.writeBypassCount;
+	}
+
+	@Override
+	public boolean isEnabled() {
+
+		return BufferedStreamStatistics.ENABLED;
+	}
+
+	@Override
+	public String toString() {
+
+		return "BufferedStreamStatistics{fills:" + this.fillCount + ",fillBytes:" + this.fillBytes + ",readBypass:" + this.readBypassCount + ",readBypassBytes:"
+				+ this.readBypassBytes + ",flushes:" + this.flushCount + ",flushBytes:" + this.flushBytes + ",writeBypass:" + this.writeBypassCount
+				+ ",writeBypassBytes:" + this.writeBypassBytes + ",utfFallbacks:" + this.utfFallbackCount + "}";
+	}
+}
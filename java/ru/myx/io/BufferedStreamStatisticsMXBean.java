@@ -0,0 +1,47 @@
+/**
+ *
+ */
+package ru.myx.io;
+
+/** Management interface of buffered stream statistics, see BufferedStreamStatistics.
+ *
+ * @author myx */
+public interface BufferedStreamStatisticsMXBean {
+
+	/** @return average amount of bytes returned by one underlying read in fill() */
+	double getBytesPerFill();
+
+	/** @return average amount of bytes passed to one underlying write when flushing buffer */
+	double getBytesPerFlush();
+
+	/** @return total amount of bytes returned by underlying reads in fill() */
+	long getFillBytes();
+
+	/** @return number of fill() calls, i.e. underlying reads into the buffer */
+	long getFillCount();
+
+	/** @return total amount of bytes written to underlying outputs when flushing buffer */
+	long getFlushBytes();
+
+	/** @return number of buffer flushes, i.e. underlying writes of buffered bytes */
+	long getFlushCount();
+
+	/** @return total amount of bytes read directly into caller's arrays, bypassing the buffer */
+	long getReadBypassBytes();
+
+	/** @return number of reads done directly into caller's arrays, bypassing the buffer */
+	long getReadBypassCount();
+
+	/** @return number of readUTF calls that allocated a char array because the string did not fit
+	 *         the reusable one */
+	long getUtfFallbackCount();
+
+	/** @return total amount of bytes written directly from caller's arrays, bypassing the buffer */
+	long getWriteBypassBytes();
+
+	/** @return number of writes done directly from caller's arrays, bypassing the buffer */
+	long getWriteBypassCount();
+
+	/** @return true when statistics are collected, see BufferedStreamStatistics.ENABLED */
+	boolean isEnabled();
+}
@@ -0,0 +1,311 @@
+package ru.myx.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Lock-free single-producer single-consumer byte pipe over a ring buffer, replacement for
+ * PipedInputStream/PipedOutputStream between two threads. One thread writes to getOutputStream()
+ * (or getDataOutput()), another one reads getInputStream() (or getDataInput()).
+ *
+ * Read and write indices are published with ordered writes (AtomicLong.lazySet), once per write or
+ * read call, not per byte: each side keeps a cached copy of the other side's index and refreshes it
+ * only when the ring looks full (empty). Data ends buffered by DataOutputBufferedReusable and
+ * DataInputBufferedReusable make publication batched: bytes reach the reader on buffer flush.
+ *
+ * Waiting side spins, then yields, then parks with exponential backoff up to maxParkNanos. No
+ * locks, no monitors, no unpark: safe for virtual threads.
+ *
+ * Closing the output is end of stream for the input after all written bytes are read, writes after
+ * that fail. Closing the input makes further writes fail.
+ *
+ * @author myx */
+public final class BytePipe {
+
+	private final class Input extends InputStream {
+
+		/** Reader's copy of the write index */
+		private long tailCache;
+
+		/** Read index, published to head */
+		private long index;
+
+		Input() {
+
+			//
+		}
+
+		@Override
+		public int available() {
+
+			return (int) (BytePipe.this.tail.get() - this.index);
+		}
+
+		/** @return number of bytes readable, waits for at least one, 0 on end of stream
+		 * @throws IOException */
+		private int await() throws IOException {
+
+			for (int attempt = 0;; ++attempt) {
+				final long tail = BytePipe.this.tail.get();
+				if (tail != this.index) {
+					this.tailCache = tail;
+					return (int) (tail - this.index);
+				}
+				if (BytePipe.this.outputClosed) {
+					/** output publishes the index before the flag */
+					if (BytePipe.this.tail.get() == this.index) {
+						return 0;
+					}
+					continue;
+				}
+				if (BytePipe.this.inputClosed) {
+					throw new IOException("Pipe closed");
+				}
+				HelperWait.idle(BytePipe.this, attempt, BytePipe.this.spins, BytePipe.this.yields, BytePipe.this.maxParkNanos);
+			}
+		}
+
+		@Override
+		public void close() {
+
+			BytePipe.this.inputClosed = true;
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			if (this.tailCache == this.index && this.await() == 0) {
+				return -1;
+			}
+			final int result = BytePipe.this.ring[(int) this.index & BytePipe.this.mask] & 0xFF;
+			BytePipe.this.head.lazySet(++this.index);
+			return result;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+
+			if ((off | len | off + len | b.length - (off + len)) < 0) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int available = (int) (this.tailCache - this.index);
+			if (available == 0) {
+				available = this.await();
+				if (available == 0) {
+					return -1;
+				}
+			}
+			final int amount = available < len
+				? available
+				: len;
+			final byte[] ring = BytePipe.this.ring;
+			final int start = (int) this.index & BytePipe.this.mask;
+			final int first = Math.min(amount, ring.length - start);
+			System.arraycopy(ring, start, b, off, first);
+			if (first < amount) {
+				System.arraycopy(ring, 0, b, off + first, amount - first);
+			}
+			this.index += amount;
+			BytePipe.this.head.lazySet(this.index);
+			return amount;
+		}
+	}
+
+	private final class Output extends OutputStream {
+
+		/** Writer's copy of the read index */
+		private long headCache;
+
+		/** Write index, published to tail */
+		private long index;
+
+		Output() {
+
+			//
+		}
+
+		/** @return number of bytes writable, waits for at least one
+		 * @throws IOException */
+		private int await() throws IOException {
+
+			final int capacity = BytePipe.this.ring.length;
+			for (int attempt = 0;; ++attempt) {
+				this.checkOpen();
+				final long head = BytePipe.this.head.get();
+				if (this.index - head < capacity) {
+					this.headCache = head;
+					return (int) (capacity - (this.index - head));
+				}
+				HelperWait.idle(BytePipe.this, attempt, BytePipe.this.spins, BytePipe.this.yields, BytePipe.this.maxParkNanos);
+			}
+		}
+
+		/** @throws IOException
+		 *             when either end is closed */
+		private void checkOpen() throws IOException {
+
+			if (BytePipe.this.inputClosed) {
+				throw new IOException("Pipe closed");
+			}
+			if (BytePipe.this.outputClosed) {
+				throw new IOException("Stream closed");
+			}
+		}
+
+		/** End of stream for the reader, after it gets all written bytes */
+		@Override
+		public void close() {
+
+			BytePipe.this.outputClosed = true;
+		}
+
+		/** Nothing to do, every write is published when it returns */
+		@Override
+		public void flush() {
+
+			//
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+
+			if ((off | len | off + len | b.length - (off + len)) < 0) {
+				throw new IndexOutOfBoundsException();
+			}
+			this.checkOpen();
+			final byte[] ring = BytePipe.this.ring;
+			int offset = off;
+			int left = len;
+			while (left > 0) {
+				int free = (int) (ring.length - (this.index - this.headCache));
+				if (free == 0) {
+					free = this.await();
+				}
+				final int amount = free < left
+					? free
+					: left;
+				final int start = (int) this.index & BytePipe.this.mask;
+				final int first = Math.min(amount, ring.length - start);
+				System.arraycopy(b, offset, ring, start, first);
+				if (first < amount) {
+					System.arraycopy(b, offset + first, ring, 0, amount - first);
+				}
+				this.index += amount;
+				BytePipe.this.tail.lazySet(this.index);
+				offset += amount;
+				left -= amount;
+			}
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+
+			this.checkOpen();
+			if (this.index - this.headCache == BytePipe.this.ring.length) {
+				this.await();
+			}
+			BytePipe.this.ring[(int) this.index & BytePipe.this.mask] = (byte) b;
+			BytePipe.this.tail.lazySet(++this.index);
+		}
+	}
+
+	private final byte[] ring;
+
+	private final int mask;
+
+	/** Read index, written by the reader only */
+	private final AtomicLong head;
+
+	/** Write index, written by the writer only */
+	private final AtomicLong tail;
+
+	private volatile boolean inputClosed;
+
+	private volatile boolean outputClosed;
+
+	private final int spins;
+
+	private final int yields;
+
+	private final long maxParkNanos;
+
+	private final Input input;
+
+	private final Output output;
+
+	/** 64k ring, 100 spins, 10 yields, parks up to 1 ms. */
+	public BytePipe() {
+
+		this(64 * 1024, 100, 10, 1000000L);
+	}
+
+	/** @param capacity
+	 *            ring size, rounded up to a power of two, 1G at most
+	 * @param spins
+	 *            busy checks before yielding
+	 * @param yields
+	 *            Thread.yield() checks before parking
+	 * @param maxParkNanos
+	 *            longest park, parking starts from 1 microsecond and doubles */
+	public BytePipe(final int capacity, final int spins, final int yields, final long maxParkNanos) {
+
+		if (capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity is too big: " + capacity);
+		}
+		final int size = capacity <= 16
+			? 16
+			: Integer.highestOneBit(capacity - 1) << 1;
+		this.ring = new byte[size];
+		this.mask = size - 1;
+		this.head = new AtomicLong();
+		this.tail = new AtomicLong();
+		this.spins = spins;
+		this.yields = yields;
+		this.maxParkNanos = maxParkNanos;
+		this.input = new Input();
+		this.output = new Output();
+	}
+
+	/** @return ring size */
+	public int getCapacity() {
+
+		return this.ring.length;
+	}
+
+	/** New buffered DataInput over the reading end, for the reader thread.
+	 *
+	 * @return */
+	public DataInputBufferedReusable getDataInput() {
+
+		final DataInputBufferedReusable result = new DataInputBufferedReusable();
+		result.setStream(this.input);
+		return result;
+	}
+
+	/** New buffered DataOutput over the writing end, for the writer thread. Bytes are published on
+	 * its flush() (or when its buffer is full).
+	 *
+	 * @return */
+	public DataOutputBufferedReusable getDataOutput() {
+
+		final DataOutputBufferedReusable result = new DataOutputBufferedReusable();
+		result.setStream(this.output);
+		return result;
+	}
+
+	/** @return reading end, for one thread */
+	public InputStream getInputStream() {
+
+		return this.input;
+	}
+
+	/** @return writing end, for one thread */
+	public OutputStream getOutputStream() {
+
+		return this.output;
+	}
+}
@@ -0,0 +1,50 @@
+package ru.myx.io;
+
+import java.io.IOException;
+
+/** Serializer of one type in DataOutput format, used instead of hand-written writeTo()/readFrom()
+ * pairs. forClass() derives it from the type:
+ *
+ * records - components in declaration order, read back through the canonical constructor;
+ *
+ * other classes - non-static non-transient fields, superclass ones first, in declaration order,
+ * read back through the no-argument constructor (any access) and field writes; final fields are
+ * not supported.
+ *
+ * Supported value types: primitives, String, byte[], enums (by name) and classes forClass() accepts
+ * (nested, recursion is fine). Reference values may be NULL, a presence byte precedes them. There
+ * is no schema in the stream, both sides need the same class; values are of exactly the declared
+ * class, a subclass instance is rejected by write() (its fields would be lost).
+ *
+ * Access is compiled once per class (LambdaMetafactory for accessible record accessors,
+ * MethodHandles otherwise), encoding and decoding do no reflection. Codecs work on concrete
+ * DataOutputBufferedReusable and DataInputByteArrayFast, so their calls stay monomorphic.
+ *
+ * @author myx
+ * @param <T> */
+public interface Codec<T> {
+
+	/** Codec derived from given class, created once per class and shared.
+	 *
+	 * @param type
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             when the class or one of its field types is not supported */
+	static <T> Codec<T> forClass(final Class<T> type) {
+
+		return CodecCompiler.forClass(type);
+	}
+
+	/** @param input
+	 * @return new instance
+	 * @throws IOException */
+	T read(DataInputByteArrayFast input) throws IOException;
+
+	/** @param value
+	 *            not NULL
+	 * @param output
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             when the value (or a nested one) is of a subclass */
+	void write(T value, DataOutputBufferedReusable output) throws IOException;
+}
@@ -0,0 +1,875 @@
+package ru.myx.io;
+
+import java.io.IOException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/** Builds Codec instances, see Codec.forClass(). Records are detected reflectively, so this
+ * compiles and runs on Java 8 (where there are no records).
+ *
+ * @author myx */
+final class CodecCompiler {
+
+	/** boolean, kept in an int: 0 or 1 */
+	private static final class BooleanProperty extends Property {
+
+		private final ToIntFunction<Object> getter;
+
+		private final ObjIntConsumer<Object> setter;
+
+		BooleanProperty(final ToIntFunction<Object> getter, final ObjIntConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readBoolean()
+				? 1
+				: 0);
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeByte(this.getter.applyAsInt(target));
+		}
+	}
+
+	/** byte */
+	private static final class ByteProperty extends Property {
+
+		private final ToIntFunction<Object> getter;
+
+		private final ObjIntConsumer<Object> setter;
+
+		ByteProperty(final ToIntFunction<Object> getter, final ObjIntConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readByte());
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeByte(this.getter.applyAsInt(target));
+		}
+	}
+
+	/** char */
+	private static final class CharProperty extends Property {
+
+		private final ToIntFunction<Object> getter;
+
+		private final ObjIntConsumer<Object> setter;
+
+		CharProperty(final ToIntFunction<Object> getter, final ObjIntConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readChar());
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeChar(this.getter.applyAsInt(target));
+		}
+	}
+
+	/** double */
+	private static final class DoubleProperty extends Property {
+
+		private final ToDoubleFunction<Object> getter;
+
+		private final ObjDoubleConsumer<Object> setter;
+
+		DoubleProperty(final ToDoubleFunction<Object> getter, final ObjDoubleConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readDouble());
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeDouble(this.getter.applyAsDouble(target));
+		}
+	}
+
+	/** Class with fields, created by no-argument constructor */
+	private static final class FieldsCodec<T> implements Codec<T> {
+
+		private final MethodHandle constructor;
+
+		private final Property[] properties;
+
+		private final Class<T> type;
+
+		FieldsCodec(final Class<T> type, final MethodHandle constructor, final Property[] properties) {
+
+			this.type = type;
+			this.constructor = constructor;
+			this.properties = properties;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T read(final DataInputByteArrayFast input) throws IOException {
+
+			final Object target;
+			try {
+				target = this.constructor.invokeExact();
+			} catch (final Throwable t) {
+				throw CodecCompiler.rethrow(t);
+			}
+			for (final Property property : this.properties) {
+				property.readInto(target, input);
+			}
+			return (T) target;
+		}
+
+		@Override
+		public void write(final T value, final DataOutputBufferedReusable output) throws IOException {
+
+			/** subclass fields would be lost silently, it reads back as the declared class */
+			if (value.getClass() != this.type) {
+				throw new IllegalArgumentException("Value class: " + value.getClass().getName() + ", codec class: " + this.type.getName());
+			}
+			for (final Property property : this.properties) {
+				property.write(value, output);
+			}
+		}
+	}
+
+	/** float, kept in a double */
+	private static final class FloatProperty extends Property {
+
+		private final ToDoubleFunction<Object> getter;
+
+		private final ObjDoubleConsumer<Object> setter;
+
+		FloatProperty(final ToDoubleFunction<Object> getter, final ObjDoubleConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readFloat());
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeFloat((float) this.getter.applyAsDouble(target));
+		}
+	}
+
+	/** int */
+	private static final class IntProperty extends Property {
+
+		private final ToIntFunction<Object> getter;
+
+		private final ObjIntConsumer<Object> setter;
+
+		IntProperty(final ToIntFunction<Object> getter, final ObjIntConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readInt());
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeInt(this.getter.applyAsInt(target));
+		}
+	}
+
+	/** long */
+	private static final class LongProperty extends Property {
+
+		private final ToLongFunction<Object> getter;
+
+		private final ObjLongConsumer<Object> setter;
+
+		LongProperty(final ToLongFunction<Object> getter, final ObjLongConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readLong());
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeLong(this.getter.applyAsLong(target));
+		}
+	}
+
+	/** Reference value, NULL-able: presence byte, then the value */
+	private static final class ObjectProperty extends Property {
+
+		private final Function<Object, Object> getter;
+
+		private final BiConsumer<Object, Object> setter;
+
+		private final Value value;
+
+		ObjectProperty(final Value value, final Function<Object, Object> getter, final BiConsumer<Object, Object> setter) {
+
+			this.value = value;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		/** @param input
+		 * @return value or NULL
+		 * @throws IOException */
+		Object read(final DataInputByteArrayFast input) throws IOException {
+
+			return input.readByte() == 0
+				? null
+				: this.value.read(input);
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, this.read(input));
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			final Object value = this.getter.apply(target);
+			if (value == null) {
+				output.writeByte(0);
+				return;
+			}
+			output.writeByte(1);
+			this.value.write(value, output);
+		}
+	}
+
+	/** One field or record component */
+	private static abstract class Property {
+
+		Property() {
+
+			//
+		}
+
+		abstract void readInto(Object target, DataInputByteArrayFast input) throws IOException;
+
+		abstract void write(Object target, DataOutputBufferedReusable output) throws IOException;
+	}
+
+	/** Record, created by canonical constructor */
+	private static final class RecordCodec<T> implements Codec<T> {
+
+		/** (DataInputByteArrayFast)Object: reads components in order, calls the constructor */
+		private final MethodHandle reader;
+
+		private final Property[] properties;
+
+		RecordCodec(final MethodHandle reader, final Property[] properties) {
+
+			this.reader = reader;
+			this.properties = properties;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T read(final DataInputByteArrayFast input) throws IOException {
+
+			try {
+				return (T) this.reader.invokeExact(input);
+			} catch (final IOException e) {
+				throw e;
+			} catch (final Throwable t) {
+				throw CodecCompiler.rethrow(t);
+			}
+		}
+
+		@Override
+		public void write(final T value, final DataOutputBufferedReusable output) throws IOException {
+
+			for (final Property property : this.properties) {
+				property.write(value, output);
+			}
+		}
+	}
+
+	/** short */
+	private static final class ShortProperty extends Property {
+
+		private final ToIntFunction<Object> getter;
+
+		private final ObjIntConsumer<Object> setter;
+
+		ShortProperty(final ToIntFunction<Object> getter, final ObjIntConsumer<Object> setter) {
+
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		@Override
+		void readInto(final Object target, final DataInputByteArrayFast input) throws IOException {
+
+			this.setter.accept(target, input.readShort());
+		}
+
+		@Override
+		void write(final Object target, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeShort(this.getter.applyAsInt(target));
+		}
+	}
+
+	/** Reference value encoding */
+	private static abstract class Value {
+
+		Value() {
+
+			//
+		}
+
+		abstract Object read(DataInputByteArrayFast input) throws IOException;
+
+		abstract void write(Object value, DataOutputBufferedReusable output) throws IOException;
+	}
+
+	private static final Value VALUE_BYTES = new Value() {
+
+		@Override
+		Object read(final DataInputByteArrayFast input) throws IOException {
+
+			final byte[] result = new byte[input.readInt()];
+			input.readFully(result);
+			return result;
+		}
+
+		@Override
+		void write(final Object value, final DataOutputBufferedReusable output) throws IOException {
+
+			final byte[] bytes = (byte[]) value;
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	};
+
+	private static final Value VALUE_STRING = new Value() {
+
+		@Override
+		Object read(final DataInputByteArrayFast input) throws IOException {
+
+			return input.readUTF();
+		}
+
+		@Override
+		void write(final Object value, final DataOutputBufferedReusable output) throws IOException {
+
+			output.writeUTF((String) value);
+		}
+	};
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	/** Class.isRecord(), NULL before Java 16 */
+	private static final Method IS_RECORD = CodecCompiler.method(Class.class, "isRecord");
+
+	/** Class.getRecordComponents(), NULL before Java 16 */
+	private static final Method GET_RECORD_COMPONENTS = CodecCompiler.method(Class.class, "getRecordComponents");
+
+	private static final ClassValue<Codec<?>> CODECS = new ClassValue<Codec<?>>() {
+
+		@Override
+		protected Codec<?> computeValue(final Class<?> type) {
+
+			return CodecCompiler.isRecord(type)
+				? CodecCompiler.compileRecord(type)
+				: CodecCompiler.compileFields(type);
+		}
+	};
+
+	/** Accessor of a record component, compiled by LambdaMetafactory when accessible, wrapped
+	 * MethodHandle otherwise.
+	 *
+	 * @param accessor
+	 * @return */
+	private static Property accessorProperty(final Method accessor) {
+
+		MethodHandle direct;
+		try {
+			direct = CodecCompiler.LOOKUP.unreflect(accessor);
+		} catch (final IllegalAccessException e) {
+			direct = null;
+		}
+		final Class<?> type = accessor.getReturnType();
+		final Class<?> owner = accessor.getDeclaringClass();
+		if (direct != null) {
+			if (type == int.class || type == byte.class || type == short.class || type == char.class) {
+				final Object getter = CodecCompiler.lambda(ToIntFunction.class, "applyAsInt", int.class, direct, owner);
+				if (getter != null) {
+					return CodecCompiler.property(type, getter, null);
+				}
+			} else if (type == long.class) {
+				final Object getter = CodecCompiler.lambda(ToLongFunction.class, "applyAsLong", long.class, direct, owner);
+				if (getter != null) {
+					return CodecCompiler.property(type, getter, null);
+				}
+			} else if (type == float.class || type == double.class) {
+				final Object getter = CodecCompiler.lambda(ToDoubleFunction.class, "applyAsDouble", double.class, direct, owner);
+				if (getter != null) {
+					return CodecCompiler.property(type, getter, null);
+				}
+			} else if (!type.isPrimitive()) {
+				final Object getter = CodecCompiler.lambda(Function.class, "apply", Object.class, direct, owner);
+				if (getter != null) {
+					return CodecCompiler.property(type, getter, null);
+				}
+			}
+		}
+		accessor.setAccessible(true);
+		try {
+			return CodecCompiler.property(type, CodecCompiler.getter(type, CodecCompiler.LOOKUP.unreflect(accessor)), null);
+		} catch (final IllegalAccessException e) {
+			throw new IllegalArgumentException("Inaccessible: " + accessor, e);
+		}
+	}
+
+	private static Codec<?> compileFields(final Class<?> type) {
+
+		CodecCompiler.checkComposite(type);
+		final Constructor<?> constructor;
+		try {
+			constructor = type.getDeclaredConstructor();
+		} catch (final NoSuchMethodException e) {
+			throw new IllegalArgumentException("No constructor without arguments: " + type.getName(), e);
+		}
+		final List<Class<?>> hierarchy = new ArrayList<>();
+		for (Class<?> current = type; current != Object.class && current != null; current = current.getSuperclass()) {
+			hierarchy.add(0, current);
+		}
+		final List<Property> properties = new ArrayList<>();
+		try {
+			for (final Class<?> current : hierarchy) {
+				for (final Field field : current.getDeclaredFields()) {
+					final int modifiers = field.getModifiers();
+					if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+						continue;
+					}
+					if (Modifier.isFinal(modifiers)) {
+						throw new IllegalArgumentException("Final field is not supported, make it a record or the field non-final: " + field);
+					}
+					field.setAccessible(true);
+					final Class<?> fieldType = field.getType();
+					properties.add(CodecCompiler.property(
+							fieldType,
+							CodecCompiler.getter(fieldType, CodecCompiler.LOOKUP.unreflectGetter(field)),
+							CodecCompiler.setter(fieldType, CodecCompiler.LOOKUP.unreflectSetter(field))));
+				}
+			}
+			constructor.setAccessible(true);
+			final MethodHandle handle = CodecCompiler.LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+			return new FieldsCodec<>(type, handle, properties.toArray(new Property[properties.size()]));
+		} catch (final IllegalAccessException e) {
+			throw new IllegalArgumentException("Inaccessible: " + type.getName(), e);
+		}
+	}
+
+	private static Codec<?> compileRecord(final Class<?> type) {
+
+		try {
+			final Object[] components = (Object[]) CodecCompiler.GET_RECORD_COMPONENTS.invoke(type);
+			final Property[] properties = new Property[components.length];
+			final Class<?>[] types = new Class<?>[components.length];
+			for (int i = 0; i < components.length; ++i) {
+				final Method accessor = (Method) components[i].getClass().getMethod("getAccessor").invoke(components[i]);
+				types[i] = accessor.getReturnType();
+				properties[i] = CodecCompiler.accessorProperty(accessor);
+			}
+			final Constructor<?> constructor = type.getDeclaredConstructor(types);
+			constructor.setAccessible(true);
+			final MethodHandle handle = CodecCompiler.LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class, types));
+			return new RecordCodec<>(CodecCompiler.recordReader(handle, types, properties), properties);
+		} catch (final ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Can't compile record: " + type.getName(), e);
+		}
+	}
+
+	/** Rejects types that have no fields to encode
+	 *
+	 * @param type */
+	private static void checkComposite(final Class<?> type) {
+
+		if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum() || Modifier.isAbstract(type.getModifiers()) || type.getName().startsWith("java.")) {
+			throw new IllegalArgumentException("Not a record or a class with fields: " + type.getName());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> Codec<T> forClass(final Class<T> type) {
+
+		return (Codec<T>) CodecCompiler.CODECS.get(type);
+	}
+
+	/** MethodHandle getter wrapped into the functional interface property() expects
+	 *
+	 * @param type
+	 * @param handle
+	 *            (owner)type
+	 * @return */
+	private static Object getter(final Class<?> type, final MethodHandle handle) {
+
+		if (type == long.class) {
+			final MethodHandle exact = handle.asType(MethodType.methodType(long.class, Object.class));
+			return (ToLongFunction<Object>) target -> {
+				try {
+					return (long) exact.invokeExact(target);
+				} catch (final Throwable t) {
+					throw CodecCompiler.rethrow(t);
+				}
+			};
+		}
+		if (type == float.class || type == double.class) {
+			final MethodHandle exact = handle.asType(MethodType.methodType(double.class, Object.class));
+			return (ToDoubleFunction<Object>) target -> {
+				try {
+					return (double) exact.invokeExact(target);
+				} catch (final Throwable t) {
+					throw CodecCompiler.rethrow(t);
+				}
+			};
+		}
+		if (type.isPrimitive()) {
+			/** boolean becomes 0 or 1 */
+			final MethodHandle exact = MethodHandles.explicitCastArguments(handle, MethodType.methodType(int.class, Object.class));
+			return (ToIntFunction<Object>) target -> {
+				try {
+					return (int) exact.invokeExact(target);
+				} catch (final Throwable t) {
+					throw CodecCompiler.rethrow(t);
+				}
+			};
+		}
+		final MethodHandle exact = handle.asType(MethodType.methodType(Object.class, Object.class));
+		return (Function<Object, Object>) target -> {
+			try {
+				return exact.invokeExact(target);
+			} catch (final Throwable t) {
+				throw CodecCompiler.rethrow(t);
+			}
+		};
+	}
+
+	private static boolean isRecord(final Class<?> type) {
+
+		if (CodecCompiler.IS_RECORD == null) {
+			return false;
+		}
+		try {
+			return ((Boolean) CodecCompiler.IS_RECORD.invoke(type)).booleanValue();
+		} catch (final ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	/** Functional interface instance calling the accessor directly, NULL when LambdaMetafactory
+	 * fails
+	 *
+	 * @param face
+	 * @param name
+	 * @param returnType
+	 *            erased return type of the interface method
+	 * @param direct
+	 *            accessible accessor
+	 * @param owner
+	 * @return */
+	private static Object lambda(final Class<?> face, final String name, final Class<?> returnType, final MethodHandle direct, final Class<?> owner) {
+
+		try {
+			return LambdaMetafactory.metafactory(
+					CodecCompiler.LOOKUP,
+					name,
+					MethodType.methodType(face),
+					MethodType.methodType(returnType, Object.class),
+					direct,
+					MethodType.methodType(returnType == Object.class
+						? direct.type().returnType()
+						: returnType, owner)).getTarget().invoke();
+		} catch (final Throwable t) {
+			return null;
+		}
+	}
+
+	private static Method method(final Class<?> type, final String name) {
+
+		try {
+			return type.getMethod(name);
+		} catch (final NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/** @param type
+	 * @param getter
+	 *            from getter()
+	 * @param setter
+	 *            from setter(), NULL for records
+	 * @return */
+	@SuppressWarnings("unchecked")
+	private static Property property(final Class<?> type, final Object getter, final Object setter) {
+
+		if (type == int.class) {
+			return new IntProperty((ToIntFunction<Object>) getter, (ObjIntConsumer<Object>) setter);
+		}
+		if (type == long.class) {
+			return new LongProperty((ToLongFunction<Object>) getter, (ObjLongConsumer<Object>) setter);
+		}
+		if (type == double.class) {
+			return new DoubleProperty((ToDoubleFunction<Object>) getter, (ObjDoubleConsumer<Object>) setter);
+		}
+		if (type == float.class) {
+			return new FloatProperty((ToDoubleFunction<Object>) getter, (ObjDoubleConsumer<Object>) setter);
+		}
+		if (type == boolean.class) {
+			return new BooleanProperty((ToIntFunction<Object>) getter, (ObjIntConsumer<Object>) setter);
+		}
+		if (type == byte.class) {
+			return new ByteProperty((ToIntFunction<Object>) getter, (ObjIntConsumer<Object>) setter);
+		}
+		if (type == short.class) {
+			return new ShortProperty((ToIntFunction<Object>) getter, (ObjIntConsumer<Object>) setter);
+		}
+		if (type == char.class) {
+			return new CharProperty((ToIntFunction<Object>) getter, (ObjIntConsumer<Object>) setter);
+		}
+		return new ObjectProperty(CodecCompiler.value(type), (Function<Object, Object>) getter, (BiConsumer<Object, Object>) setter);
+	}
+
+	/** Reads one component: DataInputByteArrayFast method for primitives, ObjectProperty.read()
+	 * otherwise
+	 *
+	 * @param type
+	 * @param property
+	 * @return (DataInputByteArrayFast)type
+	 * @throws ReflectiveOperationException */
+	private static MethodHandle reader(final Class<?> type, final Property property) throws ReflectiveOperationException {
+
+		if (type.isPrimitive()) {
+			final String name = "read" + Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+			return CodecCompiler.LOOKUP.findVirtual(DataInputByteArrayFast.class, name, MethodType.methodType(type));
+		}
+		return CodecCompiler.LOOKUP.findVirtual(ObjectProperty.class, "read", MethodType.methodType(Object.class, DataInputByteArrayFast.class)).bindTo(property)
+				.asType(MethodType.methodType(type, DataInputByteArrayFast.class));
+	}
+
+	/** Folds component readers into the constructor call, first component read first. Values go
+	 * from reader to constructor argument unboxed, no array.
+	 *
+	 * @param constructor
+	 *            (types)Object
+	 * @param types
+	 * @param properties
+	 * @return (DataInputByteArrayFast)Object
+	 * @throws ReflectiveOperationException */
+	private static MethodHandle recordReader(final MethodHandle constructor, final Class<?>[] types, final Property[] properties) throws ReflectiveOperationException {
+
+		/** (input, T0 .. Tk)Object, k going down: each step reads Tk before calling the previous
+		 * step, so the outermost step reads T0 */
+		MethodHandle reader = MethodHandles.dropArguments(constructor, 0, DataInputByteArrayFast.class);
+		for (int k = types.length - 1; k >= 0; --k) {
+			/** (Tk, input, T0 .. Tk-1): folded value goes first */
+			final Class<?>[] parameters = new Class<?>[k + 2];
+			final int[] order = new int[k + 2];
+			parameters[0] = types[k];
+			parameters[1] = DataInputByteArrayFast.class;
+			order[0] = 1;
+			for (int i = 0; i < k; ++i) {
+				parameters[i + 2] = types[i];
+				order[i + 1] = i + 2;
+			}
+			order[k + 1] = 0;
+			final MethodHandle target = MethodHandles.permuteArguments(reader, MethodType.methodType(Object.class, parameters), order);
+			reader = MethodHandles.foldArguments(target, CodecCompiler.reader(types[k], properties[k]));
+		}
+		return reader;
+	}
+
+	static RuntimeException rethrow(final Throwable t) {
+
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new UndeclaredThrowableException(t);
+	}
+
+	/** MethodHandle setter wrapped into the functional interface property() expects
+	 *
+	 * @param type
+	 * @param handle
+	 *            (owner, type)void
+	 * @return */
+	private static Object setter(final Class<?> type, final MethodHandle handle) {
+
+		if (type == long.class) {
+			final MethodHandle exact = handle.asType(MethodType.methodType(void.class, Object.class, long.class));
+			return (ObjLongConsumer<Object>) (target, value) -> {
+				try {
+					exact.invokeExact(target, value);
+				} catch (final Throwable t) {
+					throw CodecCompiler.rethrow(t);
+				}
+			};
+		}
+		if (type == float.class || type == double.class) {
+			final MethodHandle exact = MethodHandles.explicitCastArguments(handle, MethodType.methodType(void.class, Object.class, double.class));
+			return (ObjDoubleConsumer<Object>) (target, value) -> {
+				try {
+					exact.invokeExact(target, value);
+				} catch (final Throwable t) {
+					throw CodecCompiler.rethrow(t);
+				}
+			};
+		}
+		if (type.isPrimitive()) {
+			/** boolean takes the lowest bit */
+			final MethodHandle exact = MethodHandles.explicitCastArguments(handle, MethodType.methodType(void.class, Object.class, int.class));
+			return (ObjIntConsumer<Object>) (target, value) -> {
+				try {
+					exact.invokeExact(target, value);
+				} catch (final Throwable t) {
+					throw CodecCompiler.rethrow(t);
+				}
+			};
+		}
+		final MethodHandle exact = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		return (BiConsumer<Object, Object>) (target, value) -> {
+			try {
+				exact.invokeExact(target, value);
+			} catch (final Throwable t) {
+				throw CodecCompiler.rethrow(t);
+			}
+		};
+	}
+
+	/** @param type
+	 *            reference type
+	 * @return encoding of its values */
+	private static Value value(final Class<?> type) {
+
+		if (type == String.class) {
+			return CodecCompiler.VALUE_STRING;
+		}
+		if (type == byte[].class) {
+			return CodecCompiler.VALUE_BYTES;
+		}
+		if (type.isEnum()) {
+			return new Value() {
+
+				@Override
+				@SuppressWarnings({
+						"unchecked", "rawtypes"
+				})
+				Object read(final DataInputByteArrayFast input) throws IOException {
+
+					return Enum.valueOf((Class) type, input.readUTF());
+				}
+
+				@Override
+				void write(final Object value, final DataOutputBufferedReusable output) throws IOException {
+
+					output.writeUTF(((Enum<?>) value).name());
+				}
+			};
+		}
+		CodecCompiler.checkComposite(type);
+		/** resolved on first use: the type may refer back to the one being compiled */
+		return new Value() {
+
+			private Codec<Object> codec;
+
+			private Codec<Object> codec() {
+
+				Codec<Object> codec = this.codec;
+				if (codec == null) {
+					@SuppressWarnings("unchecked")
+					final Codec<Object> resolved = (Codec<Object>) CodecCompiler.forClass(type);
+					this.codec = codec = resolved;
+				}
+				return codec;
+			}
+
+			@Override
+			Object read(final DataInputByteArrayFast input) throws IOException {
+
+				return this.codec().read(input);
+			}
+
+			@Override
+			void write(final Object value, final DataOutputBufferedReusable output) throws IOException {
+
+				this.codec().write(value, output);
+			}
+		};
+	}
+
+	private CodecCompiler() {
+
+		// prevent
+	}
+}
@@ -0,0 +1,384 @@
+package ru.myx.io;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Resumable decoder of DataOutput format for partial NIO buffers, as they come in a selector loop.
+ * Each read returns DONE, then the value is available through get*() methods, or NEED_MORE_DATA
+ * when the fed buffer ran out. Bytes read so far are kept in the decoder: after the next feed() the
+ * same read is called again and continues where it stopped. No exceptions for short input, no
+ * reassembly of whole messages.
+ *
+ * <pre>
+ * decoder.feed(buffer);
+ * switch (this.step) {
+ * 	case 0 :
+ * 		if (decoder.readInt() == DataDecoderResumable.NEED_MORE_DATA) {
+ * 			return;
+ * 		}
+ * 		this.type = decoder.getInt();
+ * 		this.step = 1;
+ * 		// fall through
+ * 	case 1 :
+ * 		if (decoder.readUTF() == DataDecoderResumable.NEED_MORE_DATA) {
+ * 			return;
+ * 		}
+ * 		this.name = decoder.getString();
+ * 		...
+ * }
+ * </pre>
+ *
+ * Fed buffer is read in place, big-endian whatever its order is. NEED_MORE_DATA is returned only
+ * when it is fully consumed, so it may be reused for the next read from the channel. Values that fit
+ * in the buffer are read directly, only values split between buffers are assembled byte by byte.
+ *
+ * Strings (writeUTF() format) are widened to the char buffer as bytes arrive and decoded when
+ * complete, malformed ones throw UTFDataFormatException.
+ *
+ * @author myx */
+public final class DataDecoderResumable {
+
+	/** Value is read, see get*() methods */
+	public static final int DONE = 0;
+
+	/** Input ran out, feed() more and repeat the same read */
+	public static final int NEED_MORE_DATA = -1;
+
+	private static final int STATE_NONE = 0;
+
+	private static final int STATE_PRIMITIVE = 1;
+
+	private static final int STATE_UTF = 2;
+
+	private static final int STATE_BYTES = 3;
+
+	private static final int STATE_SKIP = 4;
+
+	private boolean bigEndian;
+
+	private char[] chararr;
+
+	/** Bytes of the pending read done so far */
+	private long filled;
+
+	private ByteBuffer input;
+
+	/** Pending string length, -1 while length itself is being read */
+	private int length;
+
+	private int state;
+
+	private String string;
+
+	private long value;
+
+	/** Pending primitive width */
+	private int width;
+
+	/**
+	 *
+	 */
+	public DataDecoderResumable() {
+
+		this.chararr = BufferPool.borrowChars(1024);
+	}
+
+	/** Assembles pending primitive byte by byte
+	 *
+	 * @param width
+	 * @return true when complete */
+	private boolean accumulate(final int width) {
+
+		final ByteBuffer input = this.input;
+		while (this.filled < width) {
+			if (input == null || !input.hasRemaining()) {
+				return false;
+			}
+			this.value = this.value << 8 | input.get() & 0xFF;
+			++this.filled;
+		}
+		return true;
+	}
+
+	/** Starts a read of given state, or checks the pending one is resumed
+	 *
+	 * @param state
+	 * @return true when started */
+	private boolean begin(final int state) {
+
+		if (this.state == DataDecoderResumable.STATE_NONE) {
+			this.state = state;
+			this.filled = 0;
+			this.value = 0;
+			return true;
+		}
+		if (this.state != state) {
+			throw new IllegalStateException("Another read needs more data, repeat it first");
+		}
+		return false;
+	}
+
+	/** Sets next input buffer, read from its position to its limit. Call after NEED_MORE_DATA (or
+	 * when remaining() is 0): the previous buffer is replaced, bytes left in it are not read.
+	 *
+	 * @param buffer */
+	public void feed(final ByteBuffer buffer) {
+
+		this.input = buffer;
+		this.bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+	}
+
+	/** @return value of readByte() */
+	public boolean getBoolean() {
+
+		return this.value != 0;
+	}
+
+	/** @return value of readByte() */
+	public byte getByte() {
+
+		return (byte) this.value;
+	}
+
+	/** @return value of readShort() */
+	public char getChar() {
+
+		return (char) this.value;
+	}
+
+	/** @return value of readLong() */
+	public double getDouble() {
+
+		return Double.longBitsToDouble(this.value);
+	}
+
+	/** @return value of readInt() */
+	public float getFloat() {
+
+		return Float.intBitsToFloat((int) this.value);
+	}
+
+	/** @return value of readInt() */
+	public int getInt() {
+
+		return (int) this.value;
+	}
+
+	/** @return value of readLong() */
+	public long getLong() {
+
+		return this.value;
+	}
+
+	/** @return value of readShort() */
+	public short getShort() {
+
+		return (short) this.value;
+	}
+
+	/** @return value of readUTF() */
+	public String getString() {
+
+		return this.string;
+	}
+
+	/** @return value of readByte() */
+	public int getUnsignedByte() {
+
+		return (int) this.value & 0xFF;
+	}
+
+	/** @return value of readShort() */
+	public int getUnsignedShort() {
+
+		return (int) this.value & 0xFFFF;
+	}
+
+	/** @return true when a read returned NEED_MORE_DATA and is not completed yet */
+	public boolean isPending() {
+
+		return this.state != DataDecoderResumable.STATE_NONE;
+	}
+
+	private int primitive(final int width) {
+
+		if (this.state == DataDecoderResumable.STATE_NONE) {
+			final ByteBuffer input = this.input;
+			if (input != null && input.remaining() >= width) {
+				switch (width) {
+					case 1 :
+						this.value = input.get();
+						break;
+					case 2 :
+						this.value = this.bigEndian
+							? input.getShort()
+							: Short.reverseBytes(input.getShort());
+						break;
+					case 4 :
+						this.value = this.bigEndian
+							? input.getInt()
+							: Integer.reverseBytes(input.getInt());
+						break;
+					default :
+						this.value = this.bigEndian
+							? input.getLong()
+							: Long.reverseBytes(input.getLong());
+				}
+				return DataDecoderResumable.DONE;
+			}
+			this.begin(DataDecoderResumable.STATE_PRIMITIVE);
+			this.width = width;
+		} else if (this.state != DataDecoderResumable.STATE_PRIMITIVE || this.width != width) {
+			throw new IllegalStateException("Another read needs more data, repeat it first");
+		}
+		if (!this.accumulate(width)) {
+			return DataDecoderResumable.NEED_MORE_DATA;
+		}
+		this.state = DataDecoderResumable.STATE_NONE;
+		return DataDecoderResumable.DONE;
+	}
+
+	/** One byte, see getByte(), getUnsignedByte(), getBoolean()
+	 *
+	 * @return DONE or NEED_MORE_DATA */
+	public int readByte() {
+
+		return this.primitive(1);
+	}
+
+	/** Fills len bytes of the array, resumed calls must pass the same arguments.
+	 *
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @return DONE or NEED_MORE_DATA */
+	public int readFully(final byte[] b, final int off, final int len) {
+
+		this.begin(DataDecoderResumable.STATE_BYTES);
+		final ByteBuffer input = this.input;
+		if (input != null) {
+			final int amount = (int) Math.min(input.remaining(), len - this.filled);
+			input.get(b, off + (int) this.filled, amount);
+			this.filled += amount;
+		}
+		if (this.filled < len) {
+			return DataDecoderResumable.NEED_MORE_DATA;
+		}
+		this.state = DataDecoderResumable.STATE_NONE;
+		return DataDecoderResumable.DONE;
+	}
+
+	/** Four bytes, see getInt(), getFloat()
+	 *
+	 * @return DONE or NEED_MORE_DATA */
+	public int readInt() {
+
+		return this.primitive(4);
+	}
+
+	/** Eight bytes, see getLong(), getDouble()
+	 *
+	 * @return DONE or NEED_MORE_DATA */
+	public int readLong() {
+
+		return this.primitive(8);
+	}
+
+	/** Two bytes, see getShort(), getUnsignedShort(), getChar()
+	 *
+	 * @return DONE or NEED_MORE_DATA */
+	public int readShort() {
+
+		return this.primitive(2);
+	}
+
+	/** String written by writeUTF(), see getString()
+	 *
+	 * @return DONE or NEED_MORE_DATA
+	 * @throws UTFDataFormatException */
+	public int readUTF() throws UTFDataFormatException {
+
+		if (this.begin(DataDecoderResumable.STATE_UTF)) {
+			this.length = -1;
+		}
+		if (this.length == -1) {
+			if (!this.accumulate(2)) {
+				return DataDecoderResumable.NEED_MORE_DATA;
+			}
+			this.length = (int) this.value & 0xFFFF;
+			this.filled = 0;
+			if (this.chararr.length < this.length) {
+				BufferPool.releaseChars(this.chararr);
+				this.chararr = BufferPool.borrowChars(this.length);
+			}
+		}
+		final ByteBuffer input = this.input;
+		if (input != null) {
+			final char[] chararr = this.chararr;
+			final int start = (int) this.filled;
+			final int amount = Math.min(input.remaining(), this.length - start);
+			for (int i = 0; i < amount; ++i) {
+				chararr[start + i] = (char) (input.get() & 0xFF);
+			}
+			this.filled += amount;
+		}
+		if (this.filled < this.length) {
+			return DataDecoderResumable.NEED_MORE_DATA;
+		}
+		this.state = DataDecoderResumable.STATE_NONE;
+		final int count;
+		try {
+			count = HelperUTF.decodeUTF8(this.chararr, this.length);
+		} catch (final IllegalArgumentException e) {
+			throw new UTFDataFormatException(e.getMessage());
+		}
+		this.string = new String(this.chararr, 0, count);
+		return DataDecoderResumable.DONE;
+	}
+
+	/** Gives the char buffer back to BufferPool, call when the instance is not needed any more. The
+	 * instance must not be used after that. */
+	public void release() {
+
+		BufferPool.releaseChars(this.chararr);
+		this.chararr = null;
+		this.input = null;
+	}
+
+	/** @return bytes left in the current input buffer */
+	public int remaining() {
+
+		return this.input == null
+			? 0
+			: this.input.remaining();
+	}
+
+	/** Drops the input buffer and the pending read, if any */
+	public void reset() {
+
+		this.input = null;
+		this.state = DataDecoderResumable.STATE_NONE;
+		this.string = null;
+	}
+
+	/** Skips n bytes, resumed calls must pass the same n.
+	 *
+	 * @param n
+	 * @return DONE or NEED_MORE_DATA */
+	public int skip(final long n) {
+
+		this.begin(DataDecoderResumable.STATE_SKIP);
+		final ByteBuffer input = this.input;
+		if (input != null) {
+			final int amount = (int) Math.min(input.remaining(), n - this.filled);
+			input.position(input.position() + amount);
+			this.filled += amount;
+		}
+		if (this.filled < n) {
+			return DataDecoderResumable.NEED_MORE_DATA;
+		}
+		this.state = DataDecoderResumable.STATE_NONE;
+		return DataDecoderResumable.DONE;
+	}
+}
@@ -0,0 +1,543 @@
+package ru.myx.io;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/** Buffered DataInput over an AsynchronousFileChannel for event-loop code: ensureAvailable(n) and
+ * readFullyAsync() return CompletableFuture and never block, once they complete the synchronous
+ * DataInput methods decode straight from the buffer. Typical use:
+ *
+ * <pre>
+ * input.ensureAvailable(12).thenAccept(available -&gt; {
+ * 	final int type = input.readInt(); // no I/O, bytes are buffered
+ * 	final long id = input.readLong();
+ * });
+ * </pre>
+ *
+ * Synchronous methods called with not enough bytes buffered fall back to a blocking read, which is
+ * fine on virtual threads but should not happen on an event loop.
+ *
+ * One operation at a time: don't touch the instance until the returned future completes. Reads are
+ * positional (no channel position), the instance keeps its own file position. Reusable, see
+ * setChannel(), buffers are borrowed from BufferPool.
+ *
+ * @author myx */
+public final class DataInputAsyncFileChannel extends InputStream implements DataInput {
+
+	/** Fills the buffer until required bytes are available, one instance per input */
+	private final class BufferRead implements CompletionHandler<Integer, CompletableFuture<Integer>> {
+
+		BufferRead() {
+
+			//
+		}
+
+		@Override
+		public void completed(final Integer result, final CompletableFuture<Integer> future) {
+
+			final DataInputAsyncFileChannel input = DataInputAsyncFileChannel.this;
+			final int read = result.intValue();
+			if (read < 0) {
+				/** end of file, whatever is there */
+				future.complete(Integer.valueOf(input.count - input.pos));
+				return;
+			}
+			input.count += read;
+			input.position += read;
+			if (input.count - input.pos >= input.required) {
+				future.complete(Integer.valueOf(input.count - input.pos));
+				return;
+			}
+			input.fill(future);
+		}
+
+		@Override
+		public void failed(final Throwable error, final CompletableFuture<Integer> future) {
+
+			future.completeExceptionally(error);
+		}
+	}
+
+	/** Reads straight into caller's array, bypassing the buffer */
+	private final class DirectRead implements CompletionHandler<Integer, ByteBuffer> {
+
+		private final CompletableFuture<Void> future;
+
+		DirectRead(final CompletableFuture<Void> future) {
+
+			this.future = future;
+		}
+
+		@Override
+		public void completed(final Integer result, final ByteBuffer target) {
+
+			final int read = result.intValue();
+			if (read < 0) {
+				this.future.completeExceptionally(new EOFException());
+				return;
+			}
+			DataInputAsyncFileChannel.this.position += read;
+			if (!target.hasRemaining()) {
+				this.future.complete(null);
+				return;
+			}
+			this.read(target);
+		}
+
+		@Override
+		public void failed(final Throwable error, final ByteBuffer target) {
+
+			this.future.completeExceptionally(error);
+		}
+
+		void read(final ByteBuffer target) {
+
+			try {
+				DataInputAsyncFileChannel.this.channel.read(target, DataInputAsyncFileChannel.this.position, target, this);
+			} catch (final RuntimeException e) {
+				this.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/** Waits for the future, unwraps IOException
+	 *
+	 * @param future
+	 * @return
+	 * @throws IOException */
+	private static final <T> T await(final CompletableFuture<T> future) throws IOException {
+
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading");
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private byte[] buffer;
+
+	/** Wraps the buffer for channel reads */
+	private ByteBuffer bufferView;
+
+	private char[] chararr;
+
+	private AsynchronousFileChannel channel;
+
+	private int count;
+
+	private final BufferRead handler;
+
+	private int pos;
+
+	/** File position of buffer[count], next read goes there */
+	private long position;
+
+	/** Bytes the pending ensureAvailable() waits for */
+	private int required;
+
+	/** 32k buffer, 8k chars for readUTF */
+	public DataInputAsyncFileChannel() {
+
+		this(32 * 1024, 8 * 1024);
+	}
+
+	/** Not initialized, use setChannel().
+	 *
+	 * @param byteBufferCapacity
+	 *            16 * 1024 .. 64 * 1024, grows when ensureAvailable() asks for more
+	 * @param charBufferCapacity
+	 *            8 * 1024 .. 16 * 1024 */
+	public DataInputAsyncFileChannel(final int byteBufferCapacity, final int charBufferCapacity) {
+
+		this.buffer = BufferPool.borrowBytes(byteBufferCapacity);
+		this.bufferView = ByteBuffer.wrap(this.buffer);
+		this.chararr = BufferPool.borrowChars(charBufferCapacity);
+		this.handler = new BufferRead();
+	}
+
+	/** @return bytes buffered, readable without I/O */
+	@Override
+	public int available() {
+
+		return this.count - this.pos;
+	}
+
+	/** Closes the channel */
+	@Override
+	public void close() throws IOException {
+
+		if (this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
+		this.pos = 0;
+		this.count = 0;
+	}
+
+	/** Makes at least n bytes buffered. Completes right away when they already are.
+	 *
+	 * @param n
+	 *            any amount, the buffer grows when it's too small
+	 * @return future of the number of bytes buffered: n or more, less only at the end of file */
+	public CompletableFuture<Integer> ensureAvailable(final int n) {
+
+		if (n < 0) {
+			throw new IllegalArgumentException("n: " + n);
+		}
+		final int available = this.count - this.pos;
+		if (available >= n) {
+			return CompletableFuture.completedFuture(Integer.valueOf(available));
+		}
+		if (n > this.buffer.length) {
+			final byte[] buffer = BufferPool.borrowBytes(n);
+			System.arraycopy(this.buffer, this.pos, buffer, 0, available);
+			BufferPool.releaseBytes(this.buffer);
+			this.buffer = buffer;
+			this.bufferView = ByteBuffer.wrap(buffer);
+		} else if (this.pos > 0) {
+			System.arraycopy(this.buffer, this.pos, this.buffer, 0, available);
+		}
+		this.pos = 0;
+		this.count = available;
+		this.required = n;
+		final CompletableFuture<Integer> future = new CompletableFuture<>();
+		this.fill(future);
+		return future;
+	}
+
+	/** Reads into the free part of the buffer, completion continues in the handler.
+	 *
+	 * @param future */
+	private void fill(final CompletableFuture<Integer> future) {
+
+		final ByteBuffer view = this.bufferView;
+		view.limit(this.buffer.length);
+		view.position(this.count);
+		try {
+			this.channel.read(view, this.position, future, this.handler);
+		} catch (final RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/** @return file position of the next byte to read */
+	public long position() {
+
+		return this.position - (this.count - this.pos);
+	}
+
+	@Override
+	public int read() throws IOException {
+
+		if (this.pos >= this.count && DataInputAsyncFileChannel.await(this.ensureAvailable(1)).intValue() == 0) {
+			return -1;
+		}
+		return this.buffer[this.pos++] & 0xFF;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+
+		if (len == 0) {
+			return 0;
+		}
+		if (this.pos >= this.count && DataInputAsyncFileChannel.await(this.ensureAvailable(1)).intValue() == 0) {
+			return -1;
+		}
+		final int amount = Math.min(len, this.count - this.pos);
+		System.arraycopy(this.buffer, this.pos, b, off, amount);
+		this.pos += amount;
+		return amount;
+	}
+
+	@Override
+	public final boolean readBoolean() throws IOException {
+
+		return this.readByte() != 0;
+	}
+
+	@Override
+	public final byte readByte() throws IOException {
+
+		if (this.pos >= this.count) {
+			this.require(1);
+		}
+		return this.buffer[this.pos++];
+	}
+
+	@Override
+	public final char readChar() throws IOException {
+
+		return (char) this.readShort();
+	}
+
+	@Override
+	public final double readDouble() throws IOException {
+
+		return Double.longBitsToDouble(this.readLong());
+	}
+
+	@Override
+	public final float readFloat() throws IOException {
+
+		return Float.intBitsToFloat(this.readInt());
+	}
+
+	@Override
+	public final void readFully(final byte b[]) throws IOException {
+
+		DataInputAsyncFileChannel.await(this.readFullyAsync(b, 0, b.length));
+	}
+
+	@Override
+	public final void readFully(final byte b[], final int off, final int len) throws IOException {
+
+		DataInputAsyncFileChannel.await(this.readFullyAsync(b, off, len));
+	}
+
+	/** Reads exactly len bytes: buffered ones are copied, big remainders are read straight into the
+	 * array, small ones through the buffer.
+	 *
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @return future completing when the array is filled, with EOFException when the file ends
+	 *         first */
+	public CompletableFuture<Void> readFullyAsync(final byte[] b, final int off, final int len) {
+
+		if ((off | len | off + len | b.length - (off + len)) < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		final int buffered = Math.min(len, this.count - this.pos);
+		System.arraycopy(this.buffer, this.pos, b, off, buffered);
+		this.pos += buffered;
+		final int left = len - buffered;
+		if (left == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		if (left >= this.buffer.length) {
+			final CompletableFuture<Void> future = new CompletableFuture<>();
+			new DirectRead(future).read(ByteBuffer.wrap(b, off + buffered, left));
+			return future;
+		}
+		return this.ensureAvailable(left).thenApply(available -> {
+			if (available.intValue() < left) {
+				throw new CompletionException(new EOFException());
+			}
+			System.arraycopy(this.buffer, this.pos, b, off + buffered, left);
+			this.pos += left;
+			return null;
+		});
+	}
+
+	@Override
+	public final int readInt() throws IOException {
+
+		if (this.count - this.pos < 4) {
+			this.require(4);
+		}
+		final byte[] buffer = this.buffer;
+		final int pos = this.pos;
+		this.pos = pos + 4;
+		return (buffer[pos] & 0xFF) << 24 | (buffer[pos + 1] & 0xFF) << 16 | (buffer[pos + 2] & 0xFF) << 8 | buffer[pos + 3] & 0xFF;
+	}
+
+	@Override
+	@Deprecated
+	public final String readLine() {
+
+		throw new UnsupportedOperationException("deprecated");
+	}
+
+	@Override
+	public final long readLong() throws IOException {
+
+		if (this.count - this.pos < 8) {
+			this.require(8);
+		}
+		final byte[] buffer = this.buffer;
+		final int pos = this.pos;
+		this.pos = pos + 8;
+		final int hi = (buffer[pos] & 0xFF) << 24 | (buffer[pos + 1] & 0xFF) << 16 | (buffer[pos + 2] & 0xFF) << 8 | buffer[pos + 3] & 0xFF;
+		final int lo = (buffer[pos + 4] & 0xFF) << 24 | (buffer[pos + 5] & 0xFF) << 16 | (buffer[pos + 6] & 0xFF) << 8 | buffer[pos + 7] & 0xFF;
+		return (long) hi << 32 | lo & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public final short readShort() throws IOException {
+
+		if (this.count - this.pos < 2) {
+			this.require(2);
+		}
+		final byte[] buffer = this.buffer;
+		final int pos = this.pos;
+		this.pos = pos + 2;
+		return (short) ((buffer[pos] & 0xFF) << 8 | buffer[pos + 1] & 0xFF);
+	}
+
+	@Override
+	public final int readUnsignedByte() throws IOException {
+
+		return this.readByte() & 0xFF;
+	}
+
+	@Override
+	public final int readUnsignedShort() throws IOException {
+
+		return this.readShort() & 0xFFFF;
+	}
+
+	@Override
+	public final String readUTF() throws IOException {
+
+		final int utflen = this.readUnsignedShort();
+		if (this.count - this.pos < utflen) {
+			this.require(utflen);
+		}
+		final byte[] bytes = this.buffer;
+		final int start = this.pos;
+		final int limit = start + utflen;
+		final char[] chararr;
+		if (utflen <= this.chararr.length) {
+			chararr = this.chararr;
+		} else {
+			if (BufferedStreamStatistics.ENABLED) {
+				BufferedStreamStatistics.recordUtfFallback();
+			}
+			chararr = BufferPool.borrowChars(utflen);
+		}
+		int count = start;
+		int chararr_count = 0;
+		while (count < limit) {
+			{
+				/* ASCII run, word at a time where supported */
+				final int run = HelperSWAR.asciiLength(bytes, count, limit);
+				for (int i = 0; i < run; ++i) {
+					chararr[chararr_count + i] = (char) bytes[count + i];
+				}
+				chararr_count += run;
+				count += run;
+				if (count >= limit) {
+					break;
+				}
+			}
+			final int c = bytes[count] & 0xff;
+			if ((c & 0xE0) == 0xC0) {
+				/* 110x xxxx 10xx xxxx */
+				count += 2;
+				if (count > limit) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				final int char2 = bytes[count - 1] & 0xff;
+				if ((char2 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte " + (count - start));
+				}
+				chararr[chararr_count++] = (char) ((c & 0x1F) << 6 | char2 & 0x3F);
+				continue;
+			}
+			if ((c & 0xF0) == 0xE0) {
+				/* 1110 xxxx 10xx xxxx 10xx xxxx */
+				count += 3;
+				if (count > limit) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				final int char2 = bytes[count - 2] & 0xff;
+				final int char3 = bytes[count - 1] & 0xff;
+				if ((char2 & 0xC0) != 0x80 || (char3 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte " + (count - start - 1));
+				}
+				chararr[chararr_count++] = (char) ((c & 0x0F) << 12 | (char2 & 0x3F) << 6 | (char3 & 0x3F) << 0);
+				continue;
+			}
+			{
+				/* 10xx xxxx, 1111 xxxx */
+				throw new UTFDataFormatException("malformed input around byte " + (count - start));
+			}
+		}
+		this.pos = limit;
+		// The number of chars produced may be less than utflen
+		final String result = new String(chararr, 0, chararr_count);
+		if (chararr != this.chararr) {
+			BufferPool.releaseChars(chararr);
+		}
+		return result;
+	}
+
+	/** Gives buffers back to BufferPool, call when the instance is not needed any more (after
+	 * close()). The instance must not be used after that. */
+	public final void release() {
+
+		BufferPool.releaseBytes(this.buffer);
+		BufferPool.releaseChars(this.chararr);
+		this.buffer = null;
+		this.bufferView = null;
+		this.chararr = null;
+		this.channel = null;
+	}
+
+	/** Blocking fallback of synchronous reads: buffers n bytes or fails.
+	 *
+	 * @param n
+	 * @throws IOException */
+	private void require(final int n) throws IOException {
+
+		if (DataInputAsyncFileChannel.await(this.ensureAvailable(n)).intValue() < n) {
+			throw new EOFException();
+		}
+	}
+
+	/** Set channel to read from given file position, buffered bytes are dropped. Channel is not
+	 * closed when replaced, see close().
+	 *
+	 * @param channel
+	 * @param position */
+	public void setChannel(final AsynchronousFileChannel channel, final long position) {
+
+		this.channel = channel;
+		this.position = position;
+		this.pos = 0;
+		this.count = 0;
+	}
+
+	/** Skips buffered bytes, then moves the file position, no reads. */
+	@Override
+	public long skip(final long n) throws IOException {
+
+		if (n <= 0) {
+			return 0;
+		}
+		final int buffered = this.count - this.pos;
+		if (n <= buffered) {
+			this.pos += (int) n;
+			return n;
+		}
+		final long skipped = Math.min(n - buffered, Math.max(0, this.channel.size() - this.position));
+		this.position += skipped;
+		this.pos = 0;
+		this.count = 0;
+		return buffered + skipped;
+	}
+
+	@Override
+	public final int skipBytes(final int n) throws IOException {
+
+		return (int) this.skip(n);
+	}
+}
@@ -8,6 +8,8 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /** Fast, highly buffered, contains additional control methods. Dedicated for wrapping input
  * streams.
@@ -25,9 +27,15 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 
 	private static final InputStream DUMMY_STREAM = new DataInputByteArrayFast(null, 0, 0);
 
-	private final byte[] buffer;
+	private byte[] buffer;
 
-	private final char[] chararr;
+	/** Wraps the buffer for channel writes, created on first use */
+	private ByteBuffer bufferView;
+
+	private char[] chararr;
+
+	/** Stream position of buffer[0], advanced once per fill, bypass read or skip */
+	private long consumed;
 
 	private int count;
 
@@ -37,6 +45,9 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 
 	private int readLimit;
 
+	/** Next streams when reading a sequence, NULL otherwise */
+	private InputStreamSequence segments;
+
 	private boolean readLimitSet;
 
 	private final int readAhead;
@@ -47,8 +58,8 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 	public DataInputBufferedReusable() {
 
 		this.readAhead = 4 * 1024;
-		this.buffer = new byte[32 * 1024];
-		this.chararr = new char[8 * 1024];
+		this.buffer = BufferPool.borrowBytes(32 * 1024);
+		this.chararr = BufferPool.borrowChars(8 * 1024);
 	}
 	/** Creates an instance of reusable buffered data input.
 	 *
@@ -61,8 +72,8 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 	public DataInputBufferedReusable(final int readAhead, final int byteBufferCapacity, final int charBufferCapacity) {
 
 		this.readAhead = readAhead;
-		this.buffer = new byte[byteBufferCapacity];
-		this.chararr = new char[charBufferCapacity];
+		this.buffer = BufferPool.borrowBytesExact(byteBufferCapacity);
+		this.chararr = BufferPool.borrowChars(charBufferCapacity);
 	}
 
 	@Override
@@ -74,31 +85,63 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 	@Override
 	public final void close() throws IOException {
 
+		final Object event = BufferedStreamEvents.ENABLED
+			? BufferedStreamEvents.begin()
+			: null;
 		this.in.close();
+		if (event != null) {
+			BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_CLOSE, 0, this.in);
+		}
 		this.in = null;
+		this.segments = null;
 	}
 
-	private final void fill() throws IOException {
+	/** Buffer is consumed up to count: moves buffer start position past it, buffer becomes empty */
+	private final void discardBuffer() {
 
+		if (this.count > 0) {
+			this.consumed += this.count;
+		}
 		this.pos = 0;
-		final int read;
-		if (this.readLimitSet) {
-			read = this.in.read(
-					this.buffer,
-					0,
-					this.readLimit < this.buffer.length
-						? this.readLimit
-						: this.buffer.length);
-			if (read != -1) {
-				this.readLimit -= read;
-				if (this.readLimit <= 0) {
-					this.readLimitSet = false;
+		this.count = 0;
+	}
+
+	private final void fill() throws IOException {
+
+		this.discardBuffer();
+		for (;;) {
+			final Object event = BufferedStreamEvents.ENABLED
+				? BufferedStreamEvents.begin()
+				: null;
+			final int read;
+			if (this.readLimitSet) {
+				read = this.in.read(
+						this.buffer,
+						0,
+						this.readLimit < this.buffer.length
+							? this.readLimit
+							: this.buffer.length);
+				if (read != -1) {
+					this.readLimit -= read;
+					if (this.readLimit <= 0) {
+						this.readLimitSet = false;
+					}
 				}
+			} else {
+				read = this.in.read(this.buffer, 0, this.readAhead);
 			}
-		} else {
-			read = this.in.read(this.buffer, 0, this.readAhead);
+			if (event != null) {
+				BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_READ, read, this.in);
+			}
+			if (BufferedStreamStatistics.ENABLED) {
+				BufferedStreamStatistics.recordFill(read);
+			}
+			if (read == -1 && this.nextSegment()) {
+				continue;
+			}
+			this.count = read;
+			return;
 		}
-		this.count = read;
 	}
 
 	@Override
@@ -113,6 +156,36 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		return false;
 	}
 
+	/** Switches to the next stream of the sequence, if any. Current stream is closed.
+	 *
+	 * @return false when there is no sequence or it is over
+	 * @throws IOException */
+	private final boolean nextSegment() throws IOException {
+
+		final InputStreamSequence segments = this.segments;
+		if (segments == null) {
+			return false;
+		}
+		final InputStream previous = this.in;
+		previous.close();
+		final InputStream next = segments.next();
+		if (next == null) {
+			this.segments = null;
+			this.in = EmptyInputStream.INSTANCE;
+			return false;
+		}
+		this.in = next;
+		segments.onSwitch(previous, next, this.consumed);
+		return true;
+	}
+
+	/** @return number of bytes consumed (read or skipped) since last setStream or setBytes method
+	 *         was called, 64-bit, read-ahead is not counted */
+	public final long position() {
+
+		return this.consumed + this.pos;
+	}
+
 	@Override
 	public final int read() throws IOException {
 
@@ -131,6 +204,50 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		return this.read(b, 0, b.length);
 	}
 
+	/** Reads up to target.remaining() bytes, buffered bytes first. Heap targets are filled via their
+	 * backing array, bypassing the buffer for large reads as read(byte[],int,int) does.
+	 *
+	 * @param target
+	 * @return number of bytes read or -1 at the end of stream
+	 * @throws IOException */
+	public final int read(final ByteBuffer target) throws IOException {
+
+		final int len = target.remaining();
+		if (len == 0) {
+			return 0;
+		}
+		if (target.hasArray()) {
+			final int read = this.read(target.array(), target.arrayOffset() + target.position(), len);
+			if (read > 0) {
+				target.position(target.position() + read);
+			}
+			return read;
+		}
+		int avail = this.count - this.pos;
+		if (avail <= 0) {
+			if (len >= this.readAhead) {
+				/** direct target: read as much as asked, up to the buffer size, in one call */
+				this.discardBuffer();
+				final int read = this.readBypass(this.buffer, 0, Math.min(len, this.buffer.length));
+				if (read > 0) {
+					target.put(this.buffer, 0, read);
+				}
+				return read;
+			}
+			this.fill();
+			avail = this.count - this.pos;
+			if (avail <= 0) {
+				return -1;
+			}
+		}
+		final int amount = avail < len
+			? avail
+			: len;
+		target.put(this.buffer, this.pos, amount);
+		this.pos += amount;
+		return amount;
+	}
+
 	@Override
 	public final int read(final byte b[], final int off, final int len) throws IOException {
 
@@ -165,7 +282,8 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		int avail = this.count - this.pos;
 		if (avail <= 0) {
 			if (len >= this.buffer.length) {
-				return this.in.read(b, off, len);
+				this.discardBuffer();
+				return this.readBypass(b, off, len);
 			}
 			this.fill();
 			avail = this.count - this.pos;
@@ -194,6 +312,36 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		return ch != 0;
 	}
 
+	/** Reads from the underlying stream, not through the buffer, buffer must be empty.
+	 *
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @return
+	 * @throws IOException */
+	private final int readBypass(final byte[] b, final int off, final int len) throws IOException {
+
+		for (;;) {
+			final Object event = BufferedStreamEvents.ENABLED
+				? BufferedStreamEvents.begin()
+				: null;
+			final int read = this.in.read(b, off, len);
+			if (event != null) {
+				BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_READ, read, this.in);
+			}
+			if (BufferedStreamStatistics.ENABLED) {
+				BufferedStreamStatistics.recordReadBypass(read);
+			}
+			if (read == -1 && this.nextSegment()) {
+				continue;
+			}
+			if (read > 0) {
+				this.consumed += read;
+			}
+			return read;
+		}
+	}
+
 	@Override
 	public final byte readByte() throws IOException {
 
@@ -273,6 +421,21 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		}
 	}
 
+	/** Fills target completely, buffered bytes first.
+	 *
+	 * @param target
+	 * @throws IOException
+	 * @throws EOFException
+	 *             when stream ends before target is full */
+	public final void readFully(final ByteBuffer target) throws IOException {
+
+		while (target.hasRemaining()) {
+			if (this.read(target) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
 	@Override
 	public final int readInt() throws IOException {
 
@@ -354,9 +517,15 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 	public final String readUTF() throws IOException {
 
 		final int utflen = this.readUnsignedShort();
-		final char[] chararr = utflen <= this.chararr.length
-			? this.chararr
-			: new char[utflen];
+		final char[] chararr;
+		if (utflen <= this.chararr.length) {
+			chararr = this.chararr;
+		} else {
+			if (BufferedStreamStatistics.ENABLED) {
+				BufferedStreamStatistics.recordUtfFallback();
+			}
+			chararr = BufferPool.borrowChars(utflen);
+		}
 
 		int count = 0;
 		int chararr_count = 0;
@@ -368,6 +537,23 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 					throw new IOException("Unexpected end of stream while reading UTF string!");
 				}
 			}
+			{
+				/* ASCII run, word at a time where supported */
+				final int run = HelperSWAR.asciiLength(this.buffer, this.pos, this.pos + Math.min(utflen - count, this.count - this.pos));
+				if (run > 0) {
+					final byte[] buffer = this.buffer;
+					final int pos = this.pos;
+					for (int i = 0; i < run; ++i) {
+						chararr[chararr_count + i] = (char) buffer[pos + i];
+					}
+					chararr_count += run;
+					count += run;
+					this.pos = pos + run;
+					if (count >= utflen || this.pos >= this.count) {
+						continue;
+					}
+				}
+			}
 			final int c = this.buffer[this.pos++] & 0xff;
 			if ((c & 0x80) == 0) {
 				/* 0xxxxxxx */
@@ -402,7 +588,7 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 				}
 				if (this.pos >= this.count) {
 					this.fill();
-					if (this.count < 2) {
+					if (this.count < 1) {
 						throw new IOException("Unexpected end of stream while reading UTF string!");
 					}
 				}
@@ -426,7 +612,24 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 			}
 		}
 		// The number of chars produced may be less than utflen
-		return new String(chararr, 0, chararr_count);
+		final String result = new String(chararr, 0, chararr_count);
+		if (chararr != this.chararr) {
+			BufferPool.releaseChars(chararr);
+		}
+		return result;
+	}
+
+	/** Gives buffers back to BufferPool, call when the instance is not needed any more (after
+	 * close()). The instance must not be used after that. */
+	public final void release() {
+
+		BufferPool.releaseBytes(this.buffer);
+		BufferPool.releaseChars(this.chararr);
+		this.buffer = null;
+		this.chararr = null;
+		this.bufferView = null;
+		this.in = null;
+		this.segments = null;
 	}
 
 	@Override
@@ -441,6 +644,8 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 	public final void setBytes(final byte[] bytes) {
 
 		this.readLimitSet = false;
+		this.segments = null;
+		this.consumed = 0;
 		this.pos = 0;
 		if (bytes.length <= this.buffer.length) {
 			this.in = DataInputBufferedReusable.DUMMY_STREAM;
@@ -460,6 +665,8 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 	public final void setBytes(final byte[] bytes, final int offset, final int length) {
 
 		this.readLimitSet = false;
+		this.segments = null;
+		this.consumed = 0;
 		this.pos = 0;
 		if (length <= this.buffer.length) {
 			this.in = DataInputBufferedReusable.DUMMY_STREAM;
@@ -487,10 +694,29 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 
 		this.readLimitSet = false;
 		this.in = in;
+		this.segments = null;
+		this.consumed = 0;
 		this.pos = 0;
 		this.count = 0;
 	}
 
+	/** Set input streams, read one after another as a single stream. Next stream is requested when
+	 * current one ends, values spanning the boundary are assembled in the buffer. Exhausted streams
+	 * are closed, close() closes the current one.
+	 *
+	 * @param segments
+	 * @throws IOException */
+	public final void setStreams(final InputStreamSequence segments) throws IOException {
+
+		final InputStream first = segments.next();
+		this.setStream(first == null
+			? EmptyInputStream.INSTANCE
+			: first);
+		this.segments = first == null
+			? null
+			: segments;
+	}
+
 	@Override
 	public final long skip(final long n) throws IOException {
 
@@ -499,13 +725,12 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		}
 		final long avail = this.count - this.pos;
 		if (avail <= 0) {
-			return this.in.skip(n);
+			return this.skipUnderlying(n);
 		}
 		if (avail <= n) {
-			this.pos = 0;
-			this.count = 0;
+			this.discardBuffer();
 			if (avail < n) {
-				return avail + this.in.skip(n - avail);
+				return avail + this.skipUnderlying(n - avail);
 			}
 		} else {
 			this.pos += n;
@@ -521,13 +746,12 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		}
 		final int avail = this.count - this.pos;
 		if (avail <= 0) {
-			return (int) this.in.skip(n);
+			return (int) this.skipUnderlying(n);
 		}
 		if (avail <= n) {
-			this.pos = 0;
-			this.count = 0;
+			this.discardBuffer();
 			if (avail < n) {
-				return avail + (int) this.in.skip(n - avail);
+				return avail + (int) this.skipUnderlying(n - avail);
 			}
 		} else {
 			this.pos += n;
@@ -535,4 +759,139 @@ public final class DataInputBufferedReusable extends InputStream implements Data
 		return n;
 	}
 
+	/** Skips a frame (or a byte array) written as writeInt(length) followed by length bytes, the
+	 * payload is not copied.
+	 *
+	 * @throws IOException */
+	public final void skipFrame() throws IOException {
+
+		final int length = this.readInt();
+		if (length < 0) {
+			throw new IOException("Negative frame length: " + length);
+		}
+		this.skipFully(length);
+	}
+
+	/** Skips exactly n bytes, e.g. skipFully(8) for an unused long or double. Bytes beyond the
+	 * buffer are skipped in the underlying stream when possible, up to its available() count, read
+	 * limit (if set) is respected.
+	 *
+	 * @param n
+	 * @throws IOException
+	 * @throws EOFException
+	 *             when stream ends before n bytes are skipped */
+	public final void skipFully(final int n) throws IOException {
+
+		if (n < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		final int avail = this.count - this.pos;
+		if (avail >= n) {
+			this.pos += n;
+			return;
+		}
+		int left = avail > 0
+			? n - avail
+			: n;
+		this.discardBuffer();
+		while (left > 0) {
+			if (!this.readLimitSet) {
+				/** skip() may go past the end (FileInputStream does), so only bytes known to be there
+				 * are skipped */
+				final int known = Math.min(left, this.in.available());
+				if (known > 0) {
+					final long skipped = this.skipUnderlying(known);
+					if (skipped > 0) {
+						left -= (int) skipped;
+						continue;
+					}
+				}
+			}
+			/** stream doesn't skip, has nothing available or read limit is set: go through the buffer,
+			 * this is where the end of stream is detected */
+			this.fill();
+			if (this.count <= 0) {
+				this.count = 0;
+				throw new EOFException();
+			}
+			if (this.count >= left) {
+				this.pos = left;
+				return;
+			}
+			left -= this.count;
+			this.pos = this.count;
+		}
+	}
+
+	/** Skips in the underlying stream, buffer must be empty.
+	 *
+	 * @param n
+	 * @return
+	 * @throws IOException */
+	private final long skipUnderlying(final long n) throws IOException {
+
+		final long skipped = this.in.skip(n);
+		if (skipped > 0) {
+			this.consumed += skipped;
+		}
+		return skipped;
+	}
+
+	/** Skips a string written by writeUTF(), only its length is read.
+	 *
+	 * @throws IOException */
+	public final void skipUTF() throws IOException {
+
+		this.skipFully(this.readUnsignedShort());
+	}
+
+	/** Writes up to count bytes to given (blocking) channel: buffered bytes first, then the rest is
+	 * read in buffer-sized chunks straight from the underlying stream, no intermediate array is
+	 * allocated. Buffered read-ahead is consumed.
+	 *
+	 * @param channel
+	 * @param count
+	 * @return number of bytes transferred, less than count only when the stream ends
+	 * @throws IOException */
+	public final long transferTo(final WritableByteChannel channel, final long count) throws IOException {
+
+		if (count <= 0) {
+			return 0;
+		}
+		ByteBuffer view = this.bufferView;
+		if (view == null) {
+			this.bufferView = view = ByteBuffer.wrap(this.buffer);
+		}
+		long left = count;
+		final int avail = this.count - this.pos;
+		if (avail > 0) {
+			final int amount = avail < left
+				? avail
+				: (int) left;
+			view.limit(this.pos + amount).position(this.pos);
+			while (view.hasRemaining()) {
+				channel.write(view);
+			}
+			this.pos += amount;
+			left -= amount;
+		}
+		if (left > 0) {
+			this.discardBuffer();
+			while (left > 0) {
+				final int read = this.readBypass(this.buffer, 0, left < this.buffer.length
+					? (int) left
+					: this.buffer.length);
+				if (read <= 0) {
+					break;
+				}
+				view.limit(read).position(0);
+				while (view.hasRemaining()) {
+					channel.write(view);
+				}
+				left -= read;
+			}
+		}
+		return count - left;
+	}
+
 }
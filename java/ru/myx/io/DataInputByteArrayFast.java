@@ -273,7 +273,10 @@ public final class DataInputByteArrayFast extends InputStream implements DataInp
 	@Override
 	public final String readUTF() throws IOException {
 		final int utflen = this.readUnsignedShort();
-		final char[] chararr = new char[utflen];
+		/** big strings borrow, small ones are cheaper to allocate */
+		final char[] chararr = utflen > 1024
+			? BufferPool.borrowChars( utflen )
+			: new char[utflen];
 		
 		int count = 0;
 		int chararr_count = 0;
@@ -282,6 +285,23 @@ public final class DataInputByteArrayFast extends InputStream implements DataInp
 			if (this.pos >= this.count) {
 				throw new IOException( "Unexpected end of stream while reading UTF string!" );
 			}
+			{
+				/* ASCII run, word at a time where supported */
+				final int run = HelperSWAR.asciiLength( this.buffer, this.pos, this.pos + Math.min( utflen - count, this.count - this.pos ) );
+				if (run > 0) {
+					final byte[] buffer = this.buffer;
+					final int pos = this.pos;
+					for (int i = 0; i < run; ++i) {
+						chararr[chararr_count + i] = (char) buffer[pos + i];
+					}
+					chararr_count += run;
+					count += run;
+					this.pos = pos + run;
+					if (count >= utflen || this.pos >= this.count) {
+						continue;
+					}
+				}
+			}
 			final int c = this.buffer[this.pos++] & 0xff;
 			if ((c & 0x80) == 0) {
 				/* 0xxxxxxx */
@@ -331,7 +351,11 @@ public final class DataInputByteArrayFast extends InputStream implements DataInp
 			}
 		}
 		// The number of chars produced may be less than utflen
-		return new String( chararr, 0, chararr_count );
+		final String result = new String( chararr, 0, chararr_count );
+		if (utflen > 1024) {
+			BufferPool.releaseChars( chararr );
+		}
+		return result;
 	}
 	
 	@Override
@@ -376,9 +400,12 @@ public final class DataInputByteArrayFast extends InputStream implements DataInp
 	
 	@Override
 	public final int skipBytes(final int n) {
-		final int amount = this.count + this.pos > this.count
+		if (n <= 0) {
+			return 0;
+		}
+		final int amount = n > this.count - this.pos
 				? this.count - this.pos
-				: (int) this.count;
+				: n;
 		this.pos += amount;
 		return amount;
 	}
@@ -395,4 +422,44 @@ public final class DataInputByteArrayFast extends InputStream implements DataInp
 		this.pos += count;
 	}
 	
+	/**
+	 * Skips a frame (or a byte array) written as writeInt(length) followed by
+	 * length bytes, the payload is not touched.
+	 * 
+	 * @throws IOException
+	 */
+	public final void skipFrame() throws IOException {
+		final int length = this.readInt();
+		if (length < 0) {
+			throw new IOException( "Negative frame length: " + length );
+		}
+		this.skipFully( length );
+	}
+	
+	/**
+	 * Skips exactly n bytes, e.g. skipFully(8) for an unused long or double.
+	 * 
+	 * @param n
+	 * @throws EOFException
+	 *             when less than n bytes remain, nothing is skipped then
+	 */
+	public final void skipFully(final int n) throws EOFException {
+		if (n < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (this.count - this.pos < n) {
+			throw new EOFException();
+		}
+		this.pos += n;
+	}
+	
+	/**
+	 * Skips a string written by writeUTF(), only its length is read.
+	 * 
+	 * @throws IOException
+	 */
+	public final void skipUTF() throws IOException {
+		this.skipFully( this.readUnsignedShort() );
+	}
+	
 }
@@ -17,7 +17,7 @@ import java.io.UTFDataFormatException;
  * @author myx */
 public final class DataInputByteArrayReusable extends InputStream implements DataInput {
 	
-	private final char[] chararr;
+	private char[] chararr;
 	
 	private int count;
 	
@@ -32,7 +32,7 @@ public final class DataInputByteArrayReusable extends InputStream implements Dat
 	 */
 	public DataInputByteArrayReusable() {
 
-		this.chararr = new char[8 * 1024];
+		this.chararr = BufferPool.borrowChars(8 * 1024);
 	}
 	/** Creates an input stream. Not initialized, use setBytes method.
 	 *
@@ -40,7 +40,7 @@ public final class DataInputByteArrayReusable extends InputStream implements Dat
 	 *            8 * 1024 .. 16 * 1024 */
 	public DataInputByteArrayReusable(final int charBufferCapacity) {
 
-		this.chararr = new char[charBufferCapacity];
+		this.chararr = BufferPool.borrowChars(charBufferCapacity);
 	}
 	
 	@Override
@@ -275,7 +275,10 @@ public final class DataInputByteArrayReusable extends InputStream implements Dat
 		if (utflen <= this.chararr.length) {
 			chararr = this.chararr;
 		} else {
-			chararr = new char[utflen];
+			if (BufferedStreamStatistics.ENABLED) {
+				BufferedStreamStatistics.recordUtfFallback();
+			}
+			chararr = BufferPool.borrowChars(utflen);
 		}
 		
 		int count = 0;
@@ -285,6 +288,23 @@ public final class DataInputByteArrayReusable extends InputStream implements Dat
 			if (this.pos >= this.count) {
 				throw new IOException("Unexpected end of stream while reading UTF string!");
 			}
+			{
+				/* ASCII run, word at a time where supported */
+				final int run = HelperSWAR.asciiLength(this.buffer, this.pos, this.pos + Math.min(utflen - count, this.count - this.pos));
+				if (run > 0) {
+					final byte[] buffer = this.buffer;
+					final int pos = this.pos;
+					for (int i = 0; i < run; ++i) {
+						chararr[chararr_count + i] = (char) buffer[pos + i];
+					}
+					chararr_count += run;
+					count += run;
+					this.pos = pos + run;
+					if (count >= utflen || this.pos >= this.count) {
+						continue;
+					}
+				}
+			}
 			final int c = this.buffer[this.pos++] & 0xff;
 			if ((c & 0x80) == 0) {
 				/* 0xxxxxxx */
@@ -334,7 +354,20 @@ public final class DataInputByteArrayReusable extends InputStream implements Dat
 			}
 		}
 		// The number of chars produced may be less than utflen
-		return new String(chararr, 0, chararr_count);
+		final String result = new String(chararr, 0, chararr_count);
+		if (chararr != this.chararr) {
+			BufferPool.releaseChars(chararr);
+		}
+		return result;
+	}
+	
+	/** Gives the char buffer back to BufferPool, call when the instance is not needed any more. The
+	 * instance must not be used after that. */
+	public final void release() {
+
+		BufferPool.releaseChars(this.chararr);
+		this.chararr = null;
+		this.buffer = null;
 	}
 	
 	@Override
@@ -380,9 +413,12 @@ public final class DataInputByteArrayReusable extends InputStream implements Dat
 	@Override
 	public final int skipBytes(final int n) {
 
-		final int amount = this.count + this.pos > this.count
+		if (n <= 0) {
+			return 0;
+		}
+		final int amount = n > this.count - this.pos
 			? this.count - this.pos
-			: (int) this.count;
+			: n;
 		this.pos += amount;
 		return amount;
 	}
@@ -397,4 +433,41 @@ public final class DataInputByteArrayReusable extends InputStream implements Dat
 		this.pos += count;
 	}
 	
+	/** Skips a frame (or a byte array) written as writeInt(length) followed by length bytes, the
+	 * payload is not touched.
+	 *
+	 * @throws IOException */
+	public final void skipFrame() throws IOException {
+
+		final int length = this.readInt();
+		if (length < 0) {
+			throw new IOException("Negative frame length: " + length);
+		}
+		this.skipFully(length);
+	}
+	
+	/** Skips exactly n bytes, e.g. skipFully(8) for an unused long or double.
+	 *
+	 * @param n
+	 * @throws EOFException
+	 *             when less than n bytes remain, nothing is skipped then */
+	public final void skipFully(final int n) throws EOFException {
+
+		if (n < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (this.count - this.pos < n) {
+			throw new EOFException();
+		}
+		this.pos += n;
+	}
+	
+	/** Skips a string written by writeUTF(), only its length is read.
+	 *
+	 * @throws IOException */
+	public final void skipUTF() throws IOException {
+
+		this.skipFully(this.readUnsignedShort());
+	}
+	
 }
@@ -4,20 +4,32 @@
 package ru.myx.io;
 
 import java.io.DataOutput;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /** Fast, highly buffered, contains additional control methods. Supports both - wrapping DataOutput
  * object and OutputStream object.
  *
  * Special method - getWrittenByteCount() returns amount of bytes written since last setStream or
- * setOutput method was called.
+ * setOutput method was called, position() returns the same as long.
  *
  * Special method - writeFullyFromStream() writes all bytes from given InputStream using own buffers
  * to make this transfer more effective.
  *
+ * Special method - transferFrom() does the same without int overflow, transfers from a file to a
+ * file or to a WritableByteChannel output are done by FileChannel.transferTo() without copying
+ * through user space.
+ *
+ * Special method - setStreams() writes each flushed buffer to several streams, see
+ * OutputStreamFanOut.
+ *
  * UTF buffer used to try not to traverse string twice for calculating byte size before flushing to
  * stream.
  *
@@ -30,9 +42,9 @@ import java.io.UTFDataFormatException;
  *         TOTAL_BUFFERS = 72k */
 public final class DataOutputBufferedReusable extends OutputStream implements DataOutput {
 
-	private final byte[] buffer;
+	private byte[] buffer;
 
-	private final byte[] bytearr;
+	private byte[] bytearr;
 
 	private OutputStream outStream;
 
@@ -40,15 +52,16 @@ public final class DataOutputBufferedReusable extends OutputStream implements Da
 
 	private int pos;
 
-	private int writtenDown;
+	/** Bytes passed to the underlying output, advanced once per flush, bypass write or transfer */
+	private long writtenDown;
 
 	/**
 	 *
 	 */
 	public DataOutputBufferedReusable() {
 
-		this.buffer = new byte[32 * 1024];
-		this.bytearr = new byte[4 * 1024];
+		this.buffer = BufferPool.borrowBytes(32 * 1024);
+		this.bytearr = BufferPool.borrowBytes(4 * 1024);
 	}
 	/** Creates an instance of reusable buffered data input.
 	 *
@@ -58,27 +71,24 @@ public final class DataOutputBufferedReusable extends OutputStream implements Da
 	 *            4 * 1024 .. 8 * 1024 */
 	public DataOutputBufferedReusable(final int byteBufferCapacity, final int utfBufferCapacity) {
 		
-		this.buffer = new byte[byteBufferCapacity];
-		this.bytearr = new byte[utfBufferCapacity];
+		this.buffer = BufferPool.borrowBytesExact(byteBufferCapacity);
+		this.bytearr = BufferPool.borrowBytes(utfBufferCapacity);
 	}
 
 	@Override
 	public final void close() throws IOException {
 		
+		this.flushBuffer();
 		if (this.outStream != null) {
-			if (this.pos > 0) {
-				this.outStream.write(this.buffer, 0, this.pos);
-				this.writtenDown += this.pos;
-				this.pos = 0;
-			}
+			final Object event = BufferedStreamEvents.ENABLED
+				? BufferedStreamEvents.begin()
+				: null;
 			this.outStream.close();
+			if (event != null) {
+				BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_CLOSE, 0, this.outStream);
+			}
 			this.outStream = null;
 		} else {
-			if (this.pos > 0) {
-				this.outOutput.write(this.buffer, 0, this.pos);
-				this.writtenDown += this.pos;
-				this.pos = 0;
-			}
 			this.outOutput = null;
 		}
 	}
@@ -91,18 +101,14 @@ public final class DataOutputBufferedReusable extends OutputStream implements Da
 	@Override
 	public void flush() throws IOException {
 		
-		if (this.pos > 0) {
-			if (this.outStream != null) {
-				this.outStream.write(this.buffer, 0, this.pos);
-				this.outStream.flush();
-			} else {
-				this.outOutput.write(this.buffer, 0, this.pos);
-			}
-			this.writtenDown += this.pos;
-			this.pos = 0;
-		} else {
-			if (this.outStream != null) {
-				this.outStream.flush();
+		this.flushBuffer();
+		if (this.outStream != null) {
+			final Object event = BufferedStreamEvents.ENABLED
+				? BufferedStreamEvents.begin()
+				: null;
+			this.outStream.flush();
+			if (event != null) {
+				BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_FLUSH, 0, this.outStream);
 			}
 		}
 	}
@@ -111,22 +117,76 @@ public final class DataOutputBufferedReusable extends OutputStream implements Da
 	private void flushBuffer() throws IOException {
 		
 		if (this.pos > 0) {
+			final Object event = BufferedStreamEvents.ENABLED
+				? BufferedStreamEvents.begin()
+				: null;
 			if (this.outStream != null) {
 				this.outStream.write(this.buffer, 0, this.pos);
 			} else {
 				this.outOutput.write(this.buffer, 0, this.pos);
 			}
+			if (event != null) {
+				BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_WRITE, this.pos, this.getTarget());
+			}
+			if (BufferedStreamStatistics.ENABLED) {
+				BufferedStreamStatistics.recordFlush(this.pos);
+			}
 			this.writtenDown += this.pos;
 			this.pos = 0;
 		}
 	}
 
-	/** @return amount of bytes written since last setStream or setOutput method was called. */
+	/** @return channel of underlying FileOutputStream or RandomAccessFile, the output itself when it
+	 *         is a WritableByteChannel, or NULL */
+	private WritableByteChannel getTargetChannel() {
+
+		if (this.outStream instanceof FileOutputStream) {
+			return ((FileOutputStream) this.outStream).getChannel();
+		}
+		if (this.outOutput instanceof RandomAccessFile) {
+			return ((RandomAccessFile) this.outOutput).getChannel();
+		}
+		final Object target = this.getTarget();
+		if (target instanceof WritableByteChannel) {
+			return (WritableByteChannel) target;
+		}
+		return null;
+	}
+
+	/** @return underlying output stream or data output */
+	private Object getTarget() {
+
+		return this.outStream != null
+			? this.outStream
+			: this.outOutput;
+	}
+
+	/** @return amount of bytes written since last setStream or setOutput method was called,
+	 *         overflows for 2G and more, see position(). */
 	public final int getWrittenByteCount() {
 		
+		return (int) (this.writtenDown + this.pos);
+	}
+
+	/** @return amount of bytes written since last setStream or setOutput method was called, 64-bit,
+	 *         buffered bytes included. */
+	public final long position() {
+
 		return this.writtenDown + this.pos;
 	}
 
+	/** Gives buffers back to BufferPool, call when the instance is not needed any more (after
+	 * close()). Bytes not flushed are lost. The instance must not be used after that. */
+	public final void release() {
+
+		BufferPool.releaseBytes(this.buffer);
+		BufferPool.releaseBytes(this.bytearr);
+		this.buffer = null;
+		this.bytearr = null;
+		this.outStream = null;
+		this.outOutput = null;
+	}
+
 	/** Replace output stream. Supports both - wrapping DataOutput object and OutputStream object.
 	 *
 	 * @param out */
@@ -149,6 +209,72 @@ public final class DataOutputBufferedReusable extends OutputStream implements Da
 		this.writtenDown = 0;
 	}
 
+	/** Replace output stream with several: every flushed buffer is written to all of them, values
+	 * are encoded once. Sequential, first failure is thrown; for parallel writes, failure and slow
+	 * sink policies pass a configured OutputStreamFanOut to setStream().
+	 *
+	 * @param sinks */
+	public final void setStreams(final OutputStream... sinks) {
+
+		this.setStream(new OutputStreamFanOut(sinks));
+	}
+
+	/** Writes all bytes from given InputStream. Buffered bytes are flushed first. When the stream is
+	 * a FileInputStream and the output is a FileOutputStream, a RandomAccessFile or an output that
+	 * implements WritableByteChannel (e.g. a stream adapting a SocketChannel), bytes are moved by
+	 * FileChannel.transferTo() (sendfile / copy_file_range where the OS supports it), the source
+	 * position is advanced accordingly.
+	 *
+	 * Anything else is copied through the buffer, as writeFullyFromStream() does: non-file sources,
+	 * and Socket.getOutputStream() or Channels.newOutputStream() targets, which don't expose their
+	 * channel. So are bytes appended to the source during the transfer, and the rest after a
+	 * non-blocking channel stops accepting bytes.
+	 *
+	 * @param stream
+	 * @return amount of bytes transferred
+	 * @throws IOException */
+	public long transferFrom(final InputStream stream) throws IOException {
+
+		long written = 0;
+		if (stream instanceof FileInputStream) {
+			final WritableByteChannel target = this.getTargetChannel();
+			if (target != null) {
+				this.flushBuffer();
+				final FileChannel source = ((FileInputStream) stream).getChannel();
+				final Object event = BufferedStreamEvents.ENABLED
+					? BufferedStreamEvents.begin()
+					: null;
+				final long start = source.position();
+				final long size = source.size();
+				for (long position = start; position < size;) {
+					final long transferred = source.transferTo(position, size - position, target);
+					if (transferred <= 0) {
+						break;
+					}
+					position += transferred;
+					written += transferred;
+				}
+				source.position(start + written);
+				if (event != null) {
+					BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_WRITE, written, target);
+				}
+				this.writtenDown += written;
+			}
+		}
+		for (;;) {
+			if (this.buffer.length - this.pos < 1024) {
+				this.flushBuffer();
+			}
+			final int read = stream.read(this.buffer, this.pos, this.buffer.length - this.pos);
+			if (read == -1) {
+				break;
+			}
+			this.pos += read;
+			written += read;
+		}
+		return written;
+	}
+
 	/** Writes <code>len</code> bytes from the specified byte array starting at offset
 	 * <code>off</code> to this buffered output stream.
 	 *
@@ -175,11 +301,20 @@ public final class DataOutputBufferedReusable extends OutputStream implements Da
 			if (len >= this.buffer.length) {
 				/* If the request length exceeds the size of the output buffer, we should write the
 				 * data directly. In this way buffered streams will cascade harmlessly. */
+				final Object event = BufferedStreamEvents.ENABLED
+					? BufferedStreamEvents.begin()
+					: null;
 				if (this.outStream != null) {
 					this.outStream.write(b, off, len);
 				} else {
 					this.outOutput.write(b, off, len);
 				}
+				if (event != null) {
+					BufferedStreamEvents.end(event, BufferedStreamEvents.OPERATION_WRITE, len, this.getTarget());
+				}
+				if (BufferedStreamStatistics.ENABLED) {
+					BufferedStreamStatistics.recordWriteBypass(len);
+				}
 				this.writtenDown += len;
 				return;
 			}
@@ -331,7 +466,7 @@ public final class DataOutputBufferedReusable extends OutputStream implements Da
 	 * effective.
 	 *
 	 * @param stream
-	 * @return amount of bytes transferred
+	 * @return amount of bytes transferred, overflows for 2G and more, see transferFrom()
 	 * @throws IOException */
 	public int writeFullyFromStream(final InputStream stream) throws IOException {
 		
@@ -29,17 +29,17 @@ import java.io.UTFDataFormatException;
  *         TOTAL_BUFFERS = 80k */
 public final class DataOutputByteArrayReusable extends OutputStream implements DataOutput {
 
-	private final byte[] buffer;
+	private byte[] buffer;
 
-	private final byte[] bytearr;
+	private byte[] bytearr;
 
 	private int pos;
 
 	/** Creates an instance of reusable buffered data input. */
 	public DataOutputByteArrayReusable() {
 		
-		this.buffer = new byte[32 * 1024];
-		this.bytearr = new byte[4 * 1024];
+		this.buffer = BufferPool.borrowBytes(32 * 1024);
+		this.bytearr = BufferPool.borrowBytes(4 * 1024);
 	}
 	
 	/** Creates an instance of reusable buffered data input.
@@ -50,8 +50,8 @@ public final class DataOutputByteArrayReusable extends OutputStream implements D
 	 *            4 * 1024 .. 8 * 1024 */
 	public DataOutputByteArrayReusable(final int byteBufferCapacity, final int utfBufferCapacity) {
 
-		this.buffer = new byte[byteBufferCapacity];
-		this.bytearr = new byte[utfBufferCapacity];
+		this.buffer = BufferPool.borrowBytesExact(byteBufferCapacity);
+		this.bytearr = BufferPool.borrowBytes(utfBufferCapacity);
 	}
 
 	@Override
@@ -86,12 +86,58 @@ public final class DataOutputByteArrayReusable extends OutputStream implements D
 		return this.pos;
 	}
 
+	/** Gives buffers back to BufferPool, call when the instance is not needed any more. The
+	 * instance and the array returned by getBuffer() must not be used after that. */
+	public final void release() {
+
+		BufferPool.releaseBytes(this.buffer);
+		BufferPool.releaseBytes(this.bytearr);
+		this.buffer = null;
+		this.bytearr = null;
+	}
+
 	/** @param position */
 	public void setPosition(final int position) {
 		
 		this.pos = position;
 	}
 
+	/** Writes all bytes from given InputStream straight into the buffer, same as
+	 * writeFullyFromStream() but with the same signature as
+	 * DataOutputBufferedReusable.transferFrom(). Fails when the stream has more bytes than fit.
+	 *
+	 * Once the buffer is full, the end of the stream is checked with a mark()/read()/reset() probe,
+	 * so no byte is lost when it fails. Streams that don't support mark() fail as soon as the buffer
+	 * is full, even when they end exactly there.
+	 *
+	 * @param stream
+	 * @return amount of bytes transferred
+	 * @throws IOException */
+	public long transferFrom(final InputStream stream) throws IOException {
+
+		long written = 0;
+		for (;;) {
+			if (this.pos >= this.buffer.length) {
+				if (!stream.markSupported()) {
+					this.flushBuffer();
+				}
+				stream.mark(1);
+				if (stream.read() == -1) {
+					break;
+				}
+				stream.reset();
+				this.flushBuffer();
+			}
+			final int read = stream.read(this.buffer, this.pos, this.buffer.length - this.pos);
+			if (read == -1) {
+				break;
+			}
+			this.pos += read;
+			written += read;
+		}
+		return written;
+	}
+
 	@Override
 	public void write(final byte b[]) {
 		
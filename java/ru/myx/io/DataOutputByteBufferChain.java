@@ -0,0 +1,341 @@
+package ru.myx.io;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/** DataOutput encoding straight into a chain of pooled direct ByteBuffers (see
+ * BufferPool.borrowDirect()) for non-blocking gathering writes: no byte[] staging, no copy to a
+ * channel buffer, no hand-made partial write bookkeeping.
+ *
+ * <pre>
+ * output.writeInt(type);
+ * output.writeUTF(name);
+ * ...
+ * // when the channel is writable
+ * output.writeTo(channel);
+ * if (output.getPending() == 0) {
+ * 	// done, stop waiting for OP_WRITE
+ * }
+ * </pre>
+ *
+ * Or by hand: getBuffers() returns a read-ready array for channel.write(buffers, getBufferOffset(),
+ * getBufferCount()), recycle() after the write gives fully written buffers back to the pool. The
+ * channel advances buffer positions itself, so the chain always knows what was accepted. Encoding
+ * more while a write is pending is fine, the last buffer keeps filling.
+ *
+ * Not thread-safe. Values that don't fit in the last buffer are split over two, every buffer but the
+ * last one is full.
+ *
+ * @author myx */
+public final class DataOutputByteBufferChain extends OutputStream implements DataOutput {
+
+	/** Pooled buffers, write mode, [first .. last) */
+	private ByteBuffer[] buffers;
+
+	private int first;
+
+	private int last;
+
+	/** Same as buffers: read-mode views for the channel */
+	private ByteBuffer[] views;
+
+	/** buffers[last - 1] */
+	private ByteBuffer tail;
+
+	/**
+	 *
+	 */
+	public DataOutputByteBufferChain() {
+
+		this.buffers = new ByteBuffer[8];
+		this.views = new ByteBuffer[8];
+		this.append();
+	}
+
+	/** Adds a new buffer to the end of the chain */
+	private void append() {
+
+		if (this.last == this.buffers.length) {
+			final int count = this.last - this.first;
+			if (this.first > 0) {
+				System.arraycopy(this.buffers, this.first, this.buffers, 0, count);
+				System.arraycopy(this.views, this.first, this.views, 0, count);
+				for (int i = count; i < this.last; ++i) {
+					this.buffers[i] = null;
+					this.views[i] = null;
+				}
+			} else {
+				final ByteBuffer[] buffers = new ByteBuffer[this.buffers.length * 2];
+				final ByteBuffer[] views = new ByteBuffer[this.buffers.length * 2];
+				System.arraycopy(this.buffers, 0, buffers, 0, count);
+				System.arraycopy(this.views, 0, views, 0, count);
+				this.buffers = buffers;
+				this.views = views;
+			}
+			this.first = 0;
+			this.last = count;
+		}
+		if (this.tail != null) {
+			/** full: its view gets everything */
+			this.views[this.last - 1].limit(this.tail.position());
+		}
+		final ByteBuffer buffer = BufferPool.borrowDirect();
+		final ByteBuffer view = buffer.duplicate();
+		view.limit(0);
+		this.buffers[this.last] = buffer;
+		this.views[this.last] = view;
+		this.tail = buffer;
+		++this.last;
+	}
+
+	/** Nothing to close, see release() */
+	@Override
+	public void close() {
+
+		//
+	}
+
+	/** Number of getBuffers() elements to write
+	 *
+	 * @return */
+	public int getBufferCount() {
+
+		return this.last - this.first;
+	}
+
+	/** Index of the first getBuffers() element to write
+	 *
+	 * @return */
+	public int getBufferOffset() {
+
+		return this.first;
+	}
+
+	/** Read-mode buffers with everything encoded and not written yet, from getBufferOffset(), for
+	 * getBufferCount() elements. Internal array, valid until next encoding or recycle().
+	 *
+	 * @return */
+	public ByteBuffer[] getBuffers() {
+
+		this.views[this.last - 1].limit(this.tail.position());
+		return this.views;
+	}
+
+	/** @return bytes encoded and not written yet */
+	public long getPending() {
+
+		this.views[this.last - 1].limit(this.tail.position());
+		long pending = 0;
+		for (int i = this.first; i < this.last; ++i) {
+			pending += this.views[i].remaining();
+		}
+		return pending;
+	}
+
+	/** Gives fully written buffers back to BufferPool, call after writing getBuffers(). The last
+	 * buffer, when fully written, is rewound and reused. */
+	public void recycle() {
+
+		while (this.first < this.last - 1 && !this.views[this.first].hasRemaining()) {
+			BufferPool.releaseDirect(this.buffers[this.first]);
+			this.buffers[this.first] = null;
+			this.views[this.first] = null;
+			++this.first;
+		}
+		final ByteBuffer view = this.views[this.last - 1];
+		if (this.first == this.last - 1 && view.position() == this.tail.position()) {
+			this.tail.clear();
+			view.position(0);
+			view.limit(0);
+		}
+	}
+
+	/** Gives all buffers back to BufferPool, bytes not written are lost. The instance must not be
+	 * used after that. */
+	public void release() {
+
+		for (int i = this.first; i < this.last; ++i) {
+			BufferPool.releaseDirect(this.buffers[i]);
+			this.buffers[i] = null;
+			this.views[i] = null;
+		}
+		this.first = 0;
+		this.last = 0;
+		this.tail = null;
+	}
+
+	@Override
+	public void write(final byte[] b) {
+
+		this.write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) {
+
+		int offset = off;
+		int left = len;
+		for (;;) {
+			final int amount = Math.min(left, this.tail.remaining());
+			this.tail.put(b, offset, amount);
+			offset += amount;
+			left -= amount;
+			if (left == 0) {
+				return;
+			}
+			this.append();
+		}
+	}
+
+	/** Copies remaining bytes of given buffer, its position is moved to its limit.
+	 *
+	 * @param source */
+	public void write(final ByteBuffer source) {
+
+		final int limit = source.limit();
+		while (source.hasRemaining()) {
+			if (!this.tail.hasRemaining()) {
+				this.append();
+			}
+			source.limit(source.position() + Math.min(source.remaining(), this.tail.remaining()));
+			this.tail.put(source);
+			source.limit(limit);
+		}
+	}
+
+	@Override
+	public void write(final int b) {
+
+		if (!this.tail.hasRemaining()) {
+			this.append();
+		}
+		this.tail.put((byte) b);
+	}
+
+	@Override
+	public void writeBoolean(final boolean v) {
+
+		this.write(v
+			? 1
+			: 0);
+	}
+
+	@Override
+	public void writeByte(final int v) {
+
+		this.write(v);
+	}
+
+	@Override
+	public void writeBytes(final String s) {
+
+		final int len = s.length();
+		for (int i = 0; i < len; ++i) {
+			this.write((byte) s.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeChar(final int v) {
+
+		this.writeShort(v);
+	}
+
+	@Override
+	public void writeChars(final String s) {
+
+		final int len = s.length();
+		for (int i = 0; i < len; ++i) {
+			this.writeShort(s.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeDouble(final double v) {
+
+		this.writeLong(Double.doubleToLongBits(v));
+	}
+
+	@Override
+	public void writeFloat(final float v) {
+
+		this.writeInt(Float.floatToIntBits(v));
+	}
+
+	@Override
+	public void writeInt(final int v) {
+
+		if (this.tail.remaining() >= 4) {
+			this.tail.putInt(v);
+			return;
+		}
+		this.write(v >>> 24 & 0xFF);
+		this.write(v >>> 16 & 0xFF);
+		this.write(v >>> 8 & 0xFF);
+		this.write(v >>> 0 & 0xFF);
+	}
+
+	@Override
+	public void writeLong(final long v) {
+
+		if (this.tail.remaining() >= 8) {
+			this.tail.putLong(v);
+			return;
+		}
+		this.writeInt((int) (v >>> 32));
+		this.writeInt((int) v);
+	}
+
+	@Override
+	public void writeShort(final int v) {
+
+		if (this.tail.remaining() >= 2) {
+			this.tail.putShort((short) v);
+			return;
+		}
+		this.write(v >>> 8 & 0xFF);
+		this.write(v >>> 0 & 0xFF);
+	}
+
+	/** Writes the chain to the channel, as much as it takes now, then recycles written buffers.
+	 *
+	 * @param channel
+	 * @return bytes written
+	 * @throws IOException */
+	public long writeTo(final GatheringByteChannel channel) throws IOException {
+
+		final long written = channel.write(this.getBuffers(), this.first, this.last - this.first);
+		this.recycle();
+		return written;
+	}
+
+	@Override
+	public void writeUTF(final String str) throws UTFDataFormatException {
+
+		final int utflen = AppendBuffer.utfLength(str);
+		if (utflen > 65535) {
+			throw new UTFDataFormatException("encoded string too long: " + utflen + " bytes");
+		}
+		this.writeShort(utflen);
+		final int strlen = str.length();
+		for (int i = 0; i < strlen; ++i) {
+			final char c = str.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				this.write(c);
+				continue;
+			}
+			if (c > 0x07FF) {
+				this.write(0xE0 | c >> 12 & 0x0F);
+				this.write(0x80 | c >> 6 & 0x3F);
+				this.write(0x80 | c >> 0 & 0x3F);
+				continue;
+			}
+			this.write(0xC0 | c >> 6 & 0x1F);
+			this.write(0x80 | c >> 0 & 0x3F);
+		}
+	}
+}
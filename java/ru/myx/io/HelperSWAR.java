@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package ru.myx.io;
+
+import java.nio.ByteBuffer;
+
+/** Scanning helpers for UTF-8 decoding loops: lengths of ASCII runs and position of the zero
+ * terminator.
+ *
+ * This is the Java 8 version, it checks one byte at a time. Java 9+ version (java9 source root,
+ * packed as multi-release) reads eight bytes at a time (SWAR, VarHandle long loads).
+ *
+ * @author myx */
+final class HelperSWAR {
+
+	/** @param bytes
+	 * @param from
+	 * @param to
+	 * @return number of leading bytes in from..to range with high bit clear */
+	static final int asciiLength(final byte[] bytes, final int from, final int to) {
+
+		int index = from;
+		while (index < to && bytes[index] >= 0) {
+			++index;
+		}
+		return index - from;
+	}
+
+	/** @param buffer
+	 * @param from
+	 *            absolute index
+	 * @param to
+	 *            absolute index
+	 * @return number of leading bytes in from..to range with high bit clear and not zero */
+	static final int asciiNonZeroLength(final ByteBuffer buffer, final int from, final int to) {
+
+		int index = from;
+		for (byte b; index < to && (b = buffer.get(index)) > 0;) {
+			++index;
+		}
+		return index - from;
+	}
+
+	/** @param bytes
+	 * @param from
+	 * @param to
+	 * @return number of leading bytes in from..to range with high bit clear and not zero */
+	static final int asciiNonZeroLength(final byte[] bytes, final int from, final int to) {
+
+		int index = from;
+		while (index < to && bytes[index] > 0) {
+			++index;
+		}
+		return index - from;
+	}
+
+	/** @param buffer
+	 * @param from
+	 *            absolute index
+	 * @param to
+	 *            absolute index
+	 * @return absolute index of first zero byte in from..to range or -1 */
+	static final int indexOfZero(final ByteBuffer buffer, final int from, final int to) {
+
+		for (int index = from; index < to; ++index) {
+			if (buffer.get(index) == 0) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/** @param bytes
+	 * @param from
+	 * @param to
+	 * @return index of first zero byte in from..to range or -1 */
+	static final int indexOfZero(final byte[] bytes, final int from, final int to) {
+
+		for (int index = from; index < to; ++index) {
+			if (bytes[index] == 0) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private HelperSWAR() {
+
+		// prevent
+	}
+}
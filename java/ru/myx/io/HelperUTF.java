@@ -22,6 +22,15 @@ public class HelperUTF {
 		int chararr_count = 0;
 		
 		while (pos < length) {
+			/* 8 ASCII chars at a time */
+			while (length - pos >= 8 && ((buffer[pos] | buffer[pos + 1] | buffer[pos + 2] | buffer[pos + 3] | buffer[pos + 4] | buffer[pos + 5] | buffer[pos + 6] | buffer[pos + 7]) & 0x80) == 0) {
+				for (int i = 0; i < 8; ++i) {
+					buffer[chararr_count++] = (char) (buffer[pos++] & 0xff);
+				}
+			}
+			if (pos >= length) {
+				break;
+			}
 			final int c = buffer[pos++] & 0xff;
 			if ((c & 0x80) == 0) {
 				/* 0xxxxxxx */
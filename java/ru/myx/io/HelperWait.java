@@ -0,0 +1,47 @@
+package ru.myx.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/** Spin, then yield, then park with exponential backoff: waiting without locks and without unpark
+ * handshakes, fine for virtual threads.
+ *
+ * @author myx */
+final class HelperWait {
+
+	/** One wait step.
+	 *
+	 * @param blocker
+	 *            for thread dumps
+	 * @param attempt
+	 *            0 - first wait
+	 * @param spins
+	 *            busy checks before yielding
+	 * @param yields
+	 *            Thread.yield() checks before parking
+	 * @param maxParkNanos
+	 *            longest park, parking starts from 1 microsecond and doubles
+	 * @throws InterruptedIOException */
+	static final void idle(final Object blocker, final int attempt, final int spins, final int yields, final long maxParkNanos) throws InterruptedIOException {
+
+		if (attempt < spins) {
+			return;
+		}
+		if (attempt < spins + yields) {
+			Thread.yield();
+			return;
+		}
+		final int step = attempt - spins - yields;
+		LockSupport.parkNanos(blocker, step < 20
+			? Math.min(1000L << step, maxParkNanos)
+			: maxParkNanos);
+		if (Thread.interrupted()) {
+			throw new InterruptedIOException("Interrupted while waiting");
+		}
+	}
+
+	private HelperWait() {
+
+		// prevent
+	}
+}
@@ -0,0 +1,29 @@
+package ru.myx.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Source of consecutive input streams (e.g. segment files of one logical stream), see
+ * DataInputBufferedReusable.setStreams(). Streams are opened lazily, one at a time.
+ *
+ * @author myx */
+public interface InputStreamSequence {
+	
+	/** @return next stream or NULL when there are no more
+	 * @throws IOException */
+	InputStream next() throws IOException;
+	
+	/** Called when reading switches to the next stream, previous one is closed already. Does
+	 * nothing by default.
+	 *
+	 * @param previous
+	 * @param next
+	 * @param position
+	 *            number of bytes in all previous streams, position of the first byte of the next
+	 *            stream
+	 * @throws IOException */
+	default void onSwitch(final InputStream previous, final InputStream next, final long position) throws IOException {
+		
+		// ignore
+	}
+}
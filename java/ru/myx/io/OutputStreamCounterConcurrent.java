@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package ru.myx.io;
+
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe version of OutputStreamCounter, meant to be shared by many
+ * writing threads (e.g. to size output without writing it). Counters are
+ * striped (LongAdder), so concurrent writes do not contend on a single
+ * field. Values read while writes are in progress are not an atomic
+ * snapshot.
+ *
+ * Also keeps log2-bucketed distribution of write call sizes: bucket 0 counts
+ * zero-length writes, bucket N (1..31) counts writes of 2^(N-1) .. 2^N - 1
+ * bytes.
+ *
+ * @author myx
+ *
+ */
+public final class OutputStreamCounterConcurrent extends OutputStream {
+	/**
+	 * Number of histogram buckets, see getHistogram()
+	 */
+	public static final int		BUCKETS	= 32;
+
+	private static final int bucket(final int len) {
+		return 32 - Integer.numberOfLeadingZeros( len );
+	}
+
+	private final LongAdder		total;
+
+	private final LongAdder		count;
+
+	private final LongAdder[]	histogram;
+
+	/**
+	 *
+	 */
+	public OutputStreamCounterConcurrent() {
+		this.total = new LongAdder();
+		this.count = new LongAdder();
+		this.histogram = new LongAdder[OutputStreamCounterConcurrent.BUCKETS];
+		for (int i = 0; i < OutputStreamCounterConcurrent.BUCKETS; ++i) {
+			this.histogram[i] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void close() {
+		//
+	}
+
+	/**
+	 * Clears counters. Writes running concurrently may or may not be
+	 * accounted.
+	 */
+	public void doReset() {
+		this.total.reset();
+		this.count.reset();
+		for (final LongAdder bucket : this.histogram) {
+			bucket.reset();
+		}
+	}
+
+	@Override
+	public void flush() {
+		//
+	}
+
+	/**
+	 * Number of write commands
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Number of write commands per size bucket: index 0 - zero-length writes,
+	 * index N - writes of 2^(N-1) .. 2^N - 1 bytes.
+	 *
+	 * @return new array of OutputStreamCounterConcurrent.BUCKETS elements
+	 */
+	public long[] getHistogram() {
+		final long[] result = new long[OutputStreamCounterConcurrent.BUCKETS];
+		for (int i = 0; i < OutputStreamCounterConcurrent.BUCKETS; ++i) {
+			result[i] = this.histogram[i].sum();
+		}
+		return result;
+	}
+
+	/**
+	 * Number of bytes written
+	 *
+	 * @return
+	 */
+	public long getTotal() {
+		return this.total.sum();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder( 128 );
+		builder.append( "OutputStreamCounterConcurrent{total:" ).append( this.total.sum() ).append( ",count:" )
+				.append( this.count.sum() ).append( ",histogram:{" );
+		boolean first = true;
+		for (int i = 0; i < OutputStreamCounterConcurrent.BUCKETS; ++i) {
+			final long value = this.histogram[i].sum();
+			if (value == 0) {
+				continue;
+			}
+			if (!first) {
+				builder.append( ',' );
+			}
+			first = false;
+			builder.append( i == 0
+					? 0
+					: 1L << i - 1 ).append( ':' ).append( value );
+		}
+		return builder.append( "}}" ).toString();
+	}
+
+	@Override
+	public void write(final byte[] b) {
+		this.write( b, 0, b.length );
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) {
+		if ((off | len | off + len | b.length - (off + len)) < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.total.add( len );
+		this.count.increment();
+		this.histogram[OutputStreamCounterConcurrent.bucket( len )].increment();
+	}
+
+	@Override
+	public void write(final int i) {
+		this.total.increment();
+		this.count.increment();
+		this.histogram[1].increment();
+	}
+}
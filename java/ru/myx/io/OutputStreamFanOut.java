@@ -0,0 +1,328 @@
+package ru.myx.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/** Writes every call to all of its sinks. Meant to be the stream under DataOutputBufferedReusable
+ * (see DataOutputBufferedReusable.setStreams(), or pass a configured instance to setStream()), so
+ * records are encoded once into one buffer and each flushed buffer is passed to N sinks, no
+ * per-value dispatch.
+ *
+ * Sinks are written one after another in the calling thread, or in parallel when an executor is
+ * given. A call returns when all sinks are done with it, so caller may reuse the array right away.
+ *
+ * Failing sinks: without a listener the first failure is thrown (other failures of the same call
+ * are added as suppressed). With a listener the failed sink is detached and reported, the rest
+ * continue; IOException is thrown only when no sinks are left.
+ *
+ * Slow sinks (parallel mode, slowSinkMillis > 0): a sink not done with a call in time fails with
+ * InterruptedIOException and is always fenced off, with or without a listener: it gets no more
+ * calls, only the one still running. The caller owns the array again as soon as write() returns,
+ * so that running call may see it reused: the bytes a slow sink gets from the call it timed out on
+ * are undefined. With a listener it is detached and reported, without one the failure is thrown and
+ * close() closes the sink only if its running call has ended by then.
+ *
+ * @author myx */
+public final class OutputStreamFanOut extends OutputStream {
+
+	/** Receives sinks detached because of failure or slowness */
+	public static interface SinkListener {
+
+		/** @param sink
+		 * @param reason */
+		void onDetach(OutputStream sink, Throwable reason);
+	}
+
+	private static final int OPERATION_CLOSE = 2;
+
+	private static final int OPERATION_FLUSH = 1;
+
+	private static final int OPERATION_WRITE = 0;
+
+	/** One per sink, reused for every parallel call */
+	private static final class SinkTask implements Runnable {
+
+		final OutputStream sink;
+
+		int operation;
+
+		byte[] b;
+
+		int off;
+
+		int len;
+
+		CountDownLatch done;
+
+		Throwable error;
+
+		volatile boolean running;
+
+		SinkTask(final OutputStream sink) {
+
+			this.sink = sink;
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				OutputStreamFanOut.apply(this.sink, this.operation, this.b, this.off, this.len);
+			} catch (final Throwable t) {
+				this.error = t;
+			} finally {
+				this.b = null;
+				this.running = false;
+				this.done.countDown();
+			}
+		}
+	}
+
+	private static final void apply(final OutputStream sink, final int operation, final byte[] b, final int off, final int len) throws IOException {
+
+		switch (operation) {
+			case OPERATION_WRITE :
+				sink.write(b, off, len);
+				return;
+			case OPERATION_FLUSH :
+				sink.flush();
+				return;
+			default :
+				sink.close();
+		}
+	}
+
+	private final Executor executor;
+
+	private final long slowSinkMillis;
+
+	private final SinkListener listener;
+
+	private final SinkTask[] tasks;
+
+	private int active;
+
+	/** Slow sinks fenced off without a listener, see close() */
+	private final List<SinkTask> fenced = new ArrayList<>();
+
+	private final byte[] single = new byte[1];
+
+	/** Sequential, first failure is thrown.
+	 *
+	 * @param sinks */
+	public OutputStreamFanOut(final OutputStream... sinks) {
+
+		this(sinks, null, 0, null);
+	}
+
+	/** @param sinks
+	 * @param executor
+	 *            runs sink calls in parallel, NULL to write sequentially in calling thread
+	 * @param slowSinkMillis
+	 *            time a sink may take for one call in parallel mode, 0 - unlimited
+	 * @param listener
+	 *            NULL - fail on first sink failure, otherwise failed sinks are detached and
+	 *            reported */
+	public OutputStreamFanOut(final OutputStream[] sinks, final Executor executor, final long slowSinkMillis, final SinkListener listener) {
+
+		this.executor = executor;
+		this.slowSinkMillis = slowSinkMillis;
+		this.listener = listener;
+		this.tasks = new SinkTask[sinks.length];
+		for (int i = 0; i < sinks.length; ++i) {
+			this.tasks[i] = new SinkTask(sinks[i]);
+		}
+		this.active = sinks.length;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		/** never in parallel and never given up on: every sink gets closed */
+		try {
+			this.dispatchSequential(OutputStreamFanOut.OPERATION_CLOSE, null, 0, 0);
+		} finally {
+			for (final SinkTask task : this.fenced) {
+				if (!task.running) {
+					try {
+						task.sink.close();
+					} catch (final IOException | RuntimeException e) {
+						// already failed
+					}
+				}
+			}
+			this.fenced.clear();
+		}
+	}
+
+	/** Detaches or reports failure of the sink at given index
+	 *
+	 * @param index
+	 * @param error
+	 * @param failure
+	 *            failure to throw so far, NULL if none
+	 * @return failure to throw */
+	private IOException detach(final int index, final Throwable error, final IOException failure) {
+
+		if (this.listener == null) {
+			final IOException exception = error instanceof IOException
+				? (IOException) error
+				: new IOException("Sink failed: " + this.tasks[index].sink, error);
+			if (failure == null) {
+				return exception;
+			}
+			failure.addSuppressed(exception);
+			return failure;
+		}
+		final OutputStream sink = this.tasks[index].sink;
+		this.tasks[index] = null;
+		this.listener.onDetach(sink, error);
+		return failure;
+	}
+
+	private void dispatch(final int operation, final byte[] b, final int off, final int len) throws IOException {
+
+		if (this.executor == null || this.active < 2) {
+			this.dispatchSequential(operation, b, off, len);
+			return;
+		}
+		final int active = this.active;
+		final SinkTask[] tasks = this.tasks;
+		final CountDownLatch done = new CountDownLatch(active);
+		for (int i = 0; i < active; ++i) {
+			final SinkTask task = tasks[i];
+			task.operation = operation;
+			task.b = b;
+			task.off = off;
+			task.len = len;
+			task.done = done;
+			task.error = null;
+			task.running = true;
+			this.executor.execute(task);
+		}
+		boolean complete;
+		try {
+			if (this.slowSinkMillis > 0) {
+				complete = done.await(this.slowSinkMillis, TimeUnit.MILLISECONDS);
+			} else {
+				done.await();
+				complete = true;
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for sinks");
+		}
+		IOException failure = null;
+		for (int i = 0; i < active; ++i) {
+			final SinkTask task = tasks[i];
+			if (!complete && task.running) {
+				/** still running: no more calls, it would get them while reading this one */
+				final InterruptedIOException error = new InterruptedIOException("Slow sink: " + task.sink);
+				if (this.listener == null) {
+					this.fenced.add(task);
+					tasks[i] = null;
+					if (failure == null) {
+						failure = error;
+					} else {
+						failure.addSuppressed(error);
+					}
+					continue;
+				}
+				failure = this.detach(i, error, failure);
+				continue;
+			}
+			if (task.error != null) {
+				failure = this.detach(i, task.error, failure);
+			}
+		}
+		this.finish(failure);
+	}
+
+	private void dispatchSequential(final int operation, final byte[] b, final int off, final int len) throws IOException {
+
+		IOException failure = null;
+		final int active = this.active;
+		for (int i = 0; i < active; ++i) {
+			try {
+				OutputStreamFanOut.apply(this.tasks[i].sink, operation, b, off, len);
+			} catch (final IOException | RuntimeException e) {
+				failure = this.detach(i, e, failure);
+			}
+		}
+		this.finish(failure);
+	}
+
+	/** Compacts detached sinks, throws failure if any or when there are no sinks left.
+	 *
+	 * @param failure
+	 * @throws IOException */
+	private void finish(final IOException failure) throws IOException {
+
+		final SinkTask[] tasks = this.tasks;
+		int active = 0;
+		for (int i = 0; i < this.active; ++i) {
+			if (tasks[i] != null) {
+				tasks[active++] = tasks[i];
+			}
+		}
+		for (int i = active; i < this.active; ++i) {
+			tasks[i] = null;
+		}
+		final boolean lost = active == 0 && this.active > 0;
+		this.active = active;
+		if (failure != null) {
+			throw failure;
+		}
+		if (lost) {
+			throw new IOException("All sinks are detached");
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+
+		this.dispatch(OutputStreamFanOut.OPERATION_FLUSH, null, 0, 0);
+	}
+
+	/** @return number of sinks still attached */
+	public int getSinkCount() {
+
+		return this.active;
+	}
+
+	/** @return sinks still attached */
+	public OutputStream[] getSinks() {
+
+		final OutputStream[] result = new OutputStream[this.active];
+		for (int i = 0; i < this.active; ++i) {
+			result[i] = this.tasks[i].sink;
+		}
+		return result;
+	}
+
+	@Override
+	public void write(final byte[] b) throws IOException {
+
+		this.dispatch(OutputStreamFanOut.OPERATION_WRITE, b, 0, b.length);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+
+		this.dispatch(OutputStreamFanOut.OPERATION_WRITE, b, off, len);
+	}
+
+	/** Rare (DataOutputBufferedReusable never does it), goes through a one-byte array. */
+	@Override
+	public void write(final int b) throws IOException {
+
+		this.single[0] = (byte) b;
+		this.dispatch(OutputStreamFanOut.OPERATION_WRITE, this.single, 0, 1);
+	}
+}
@@ -8,55 +8,293 @@ import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 /**
+ * Streaming encoder: reads characters from a Reader (or a CharSequence) and
+ * provides them as bytes in given charset. Malformed and unmappable input is
+ * replaced, same as InputStreamReader/OutputStreamWriter do.
+ *
+ * Bulk reads at least as large as the internal byte buffer are encoded
+ * straight into the caller's array, smaller reads are served from the
+ * internal byte buffer.
+ *
+ * UTF-8 is encoded by hand, without CharsetEncoder, with a fast path for
+ * ASCII runs.
+ *
  * @author myx
- * 
+ *
+ *         BUFFER_CHARS = 8k (2x8k bytes)
+ *
+ *         BUFFER_BYTES = 8k
+ *
  */
 public class ReaderInputStream extends InputStream {
 	private final Reader			reader;
-	
+
+	private final CharSequence		sequence;
+
+	private int						sequencePosition;
+
+	/**
+	 * NULL for UTF-8
+	 */
 	private final CharsetEncoder	encoder;
-	
+
+	private final char[]			chars;
+
 	private final CharBuffer		charBuffer;
-	
+
 	private final ByteBuffer		byteBuffer;
-	
+
+	private boolean					endOfInput;
+
+	private boolean					flushed;
+
+	/**
+	 * Reads characters straight from given sequence, without a Reader.
+	 *
+	 * @param sequence
+	 * @param charset
+	 */
+	public ReaderInputStream(final CharSequence sequence, final Charset charset) {
+		this( null, sequence, charset, Math.min( sequence.length(), 8 * 1024 ), 8 * 1024 );
+	}
+
 	/**
 	 * @param reader
 	 * @param charset
 	 */
 	public ReaderInputStream(final Reader reader, final Charset charset) {
+		this( reader, charset, 8 * 1024, 8 * 1024 );
+	}
+
+	/**
+	 * @param reader
+	 * @param charset
+	 * @param charBufferCapacity
+	 *            4 * 1024 .. 8 * 1024 .. 32 * 1024
+	 * @param byteBufferCapacity
+	 *            4 * 1024 .. 8 * 1024 .. 64 * 1024
+	 */
+	public ReaderInputStream(final Reader reader,
+			final Charset charset,
+			final int charBufferCapacity,
+			final int byteBufferCapacity) {
+		this( reader, null, charset, charBufferCapacity, byteBufferCapacity );
 		assert reader != null : "NULL reader!";
+	}
+
+	private ReaderInputStream(final Reader reader,
+			final CharSequence sequence,
+			final Charset charset,
+			final int charBufferCapacity,
+			final int byteBufferCapacity) {
 		this.reader = reader;
-		this.encoder = charset.newEncoder();
-		this.charBuffer = CharBuffer.allocate( 256 );
-		this.byteBuffer = ByteBuffer.allocate( 256 );
+		this.sequence = sequence;
+		this.encoder = StandardCharsets.UTF_8.equals( charset )
+				? null
+				: charset.newEncoder().onMalformedInput( CodingErrorAction.REPLACE )
+						.onUnmappableCharacter( CodingErrorAction.REPLACE );
+		/**
+		 * at least one surrogate pair and its encoded form should always fit
+		 */
+		this.chars = new char[Math.max( charBufferCapacity, 16 )];
+		this.charBuffer = CharBuffer.wrap( this.chars );
+		this.byteBuffer = ByteBuffer.allocate( Math.max( byteBufferCapacity, 16 ) );
 		this.charBuffer.flip();
 		this.byteBuffer.flip();
 	}
-	
+
 	@Override
 	public int available() throws IOException {
 		return this.byteBuffer.remaining();
 	}
-	
+
 	@Override
 	public void close() throws IOException {
-		this.reader.close();
+		if (this.reader != null) {
+			this.reader.close();
+		}
 		super.close();
 	}
-	
+
+	/**
+	 * Encodes as much as possible into given buffer. Returns when buffer is
+	 * full, when end of input is reached and encoder is flushed or when some
+	 * bytes were produced and more characters are needed.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	private void encode(final ByteBuffer out) throws IOException {
+		if (this.encoder == null) {
+			this.encodeUTF8( out );
+			return;
+		}
+		final int start = out.position();
+		for (;;) {
+			if (this.flushed) {
+				return;
+			}
+			final CoderResult result = this.encoder.encode( this.charBuffer, out, this.endOfInput );
+			if (result.isOverflow()) {
+				return;
+			}
+			if (this.endOfInput) {
+				if (this.encoder.flush( out ).isOverflow()) {
+					return;
+				}
+				this.flushed = true;
+				return;
+			}
+			if (out.position() > start && !this.ready()) {
+				/**
+				 * don't block for more input when something is produced
+				 * already
+				 */
+				return;
+			}
+			this.fillChars();
+		}
+	}
+
+	/**
+	 * Standard (not modified) UTF-8, unpaired surrogates are replaced with
+	 * '?', same as UTF-8 CharsetEncoder does.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	private void encodeUTF8(final ByteBuffer out) throws IOException {
+		final byte[] target = out.array();
+		final int limit = out.limit();
+		final int start = out.position();
+		final char[] chars = this.chars;
+		int index = start;
+		for (;;) {
+			if (this.flushed) {
+				break;
+			}
+			int position = this.charBuffer.position();
+			final int count = this.charBuffer.limit();
+			{
+				/* ASCII run */
+				final int end = position + Math.min( count - position, limit - index );
+				while (position < end) {
+					final char c = chars[position];
+					if (c >= 0x80) {
+						break;
+					}
+					target[index++] = (byte) c;
+					position++;
+				}
+			}
+			for (; position < count; ++position) {
+				final char c = chars[position];
+				if (c < 0x80) {
+					/* 0xxxxxxx */
+					if (index >= limit) {
+						break;
+					}
+					target[index++] = (byte) c;
+					continue;
+				}
+				if (c < 0x800) {
+					/* 110x xxxx 10xx xxxx */
+					if (limit - index < 2) {
+						break;
+					}
+					target[index++] = (byte) (0xC0 | c >> 6);
+					target[index++] = (byte) (0x80 | c & 0x3F);
+					continue;
+				}
+				if (Character.isSurrogate( c )) {
+					if (Character.isHighSurrogate( c )) {
+						if (position + 1 < count) {
+							final char d = chars[position + 1];
+							if (Character.isLowSurrogate( d )) {
+								/* 1111 0xxx 10xx xxxx 10xx xxxx 10xx xxxx */
+								if (limit - index < 4) {
+									break;
+								}
+								final int code = Character.toCodePoint( c, d );
+								target[index++] = (byte) (0xF0 | code >> 18);
+								target[index++] = (byte) (0x80 | code >> 12 & 0x3F);
+								target[index++] = (byte) (0x80 | code >> 6 & 0x3F);
+								target[index++] = (byte) (0x80 | code & 0x3F);
+								position++;
+								continue;
+							}
+						} else if (!this.endOfInput) {
+							/**
+							 * low surrogate is in the next portion
+							 */
+							break;
+						}
+					}
+					if (index >= limit) {
+						break;
+					}
+					target[index++] = '?';
+					continue;
+				}
+				/* 1110 xxxx 10xx xxxx 10xx xxxx */
+				if (limit - index < 3) {
+					break;
+				}
+				target[index++] = (byte) (0xE0 | c >> 12);
+				target[index++] = (byte) (0x80 | c >> 6 & 0x3F);
+				target[index++] = (byte) (0x80 | c & 0x3F);
+			}
+			this.charBuffer.position( position );
+			if (position < count && (position + 1 < count || !Character.isHighSurrogate( chars[position] ))) {
+				/**
+				 * output is full
+				 */
+				break;
+			}
+			if (this.endOfInput) {
+				this.flushed = position == count;
+				break;
+			}
+			if (index > start && !this.ready()) {
+				/**
+				 * don't block for more input when something is produced
+				 * already
+				 */
+				break;
+			}
+			this.fillChars();
+		}
+		out.position( index );
+	}
+
+	private void fillChars() throws IOException {
+		this.charBuffer.compact();
+		final int position = this.charBuffer.position();
+		final int read = this.reader == null
+				? this.readSequence( position )
+				: this.reader.read( this.chars, position, this.chars.length - position );
+		if (read == -1) {
+			this.endOfInput = true;
+		} else {
+			this.charBuffer.position( position + read );
+		}
+		this.charBuffer.flip();
+	}
+
 	@Override
 	public void mark(final int readlimit) {
 		throw new UnsupportedOperationException( "Unsupported!" );
 	}
-	
+
 	@Override
 	public boolean markSupported() {
 		return false;
 	}
-	
+
 	@Override
 	public int read() throws IOException {
 		if (this.byteBuffer.hasRemaining()) {
@@ -67,34 +305,85 @@ public class ReaderInputStream extends InputStream {
 				? this.byteBuffer.get() & 0xFF
 				: -1;
 	}
-	
-	@SuppressWarnings("unused")
-	private boolean refill() throws IOException {
-		System.out.println( ">>> moreBytes: " + this.byteBuffer.remaining() );
-		if (!this.charBuffer.hasRemaining()) {
-			this.charBuffer.clear();
-			System.out.println( ">>> moreChars: " + this.charBuffer );
-			this.reader.read( this.charBuffer );
-			this.charBuffer.flip();
+
+	@Override
+	public int read(final byte[] b) throws IOException {
+		return this.read( b, 0, b.length );
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if ((off | len | off + len | b.length - (off + len)) < 0) {
+			throw new IndexOutOfBoundsException();
 		}
-		if (this.charBuffer.hasRemaining()) {
-			this.byteBuffer.clear();
-			System.out.println( ">>> encode: " + this.byteBuffer + ", " + this.charBuffer );
-			final CoderResult result = this.encoder.encode( this.charBuffer, this.byteBuffer, false );
-			System.out.println( ">>> encode result: " + result + ", " + this.byteBuffer + ", " + this.charBuffer );
-			this.byteBuffer.flip();
+		if (len == 0) {
+			return 0;
+		}
+		int n = 0;
+		final int buffered = this.byteBuffer.remaining();
+		if (buffered > 0) {
+			n = buffered < len
+					? buffered
+					: len;
+			this.byteBuffer.get( b, off, n );
+			if (n == len || this.flushed || !this.ready()) {
+				/**
+				 * don't block for more input when something is read already
+				 */
+				return n;
+			}
+		}
+		if (len - n < this.byteBuffer.capacity()) {
+			if (n > 0) {
+				return n;
+			}
+			this.refill();
+			final int amount = Math.min( this.byteBuffer.remaining(), len );
+			if (amount == 0) {
+				return -1;
+			}
+			this.byteBuffer.get( b, off, amount );
+			return amount;
 		}
 		/**
-		 * fuck knows how this sun's stuff intended to work
+		 * wrapped per call, not kept: the array is the caller's
 		 */
-		if (false && !this.byteBuffer.hasRemaining()) {
-			this.byteBuffer.clear();
-			System.out.println( ">>> flush: " + this.byteBuffer + ", " + this.charBuffer );
-			final CoderResult result = this.encoder.flush( this.byteBuffer );
-			System.out.println( ">>> flush result: " + result + ", " + this.byteBuffer + ", " + this.charBuffer );
-			this.byteBuffer.flip();
+		final ByteBuffer target = ByteBuffer.wrap( b, off + n, len - n );
+		this.encode( target );
+		n = target.position() - off;
+		return n == 0
+				? -1
+				: n;
+	}
+
+	private boolean ready() throws IOException {
+		return this.reader == null || this.reader.ready();
+	}
+
+	private int readSequence(final int position) {
+		final CharSequence sequence = this.sequence;
+		final int start = this.sequencePosition;
+		final int amount = Math.min( sequence.length() - start, this.chars.length - position );
+		if (amount <= 0) {
+			return -1;
 		}
-		return true;
+		if (sequence instanceof String) {
+			((String) sequence).getChars( start, start + amount, this.chars, position );
+		} else if (sequence instanceof StringBuilder) {
+			((StringBuilder) sequence).getChars( start, start + amount, this.chars, position );
+		} else {
+			for (int i = 0; i < amount; ++i) {
+				this.chars[position + i] = sequence.charAt( start + i );
+			}
+		}
+		this.sequencePosition = start + amount;
+		return amount;
 	}
-	
+
+	private void refill() throws IOException {
+		this.byteBuffer.clear();
+		this.encode( this.byteBuffer );
+		this.byteBuffer.flip();
+	}
+
 }
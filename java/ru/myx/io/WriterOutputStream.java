@@ -7,52 +7,324 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 /**
+ * Streaming decoder: takes bytes in given charset and writes them as
+ * characters to a Writer. Malformed and unmappable input is replaced, same as
+ * InputStreamReader/OutputStreamWriter do.
+ *
+ * Small writes are collected in the internal byte buffer and decoded when it
+ * is full or on flush(). Writes larger than the free space of the internal
+ * buffer are decoded straight from the caller's array. Decoded characters are
+ * passed to the Writer in batches, with one Writer.write(char[],int,int) call
+ * per batch. Byte sequences split between write calls are kept until the
+ * rest arrives, the decoder is finalised on close().
+ *
+ * UTF-8 is decoded by hand, without CharsetDecoder, with a fast path for
+ * ASCII runs.
+ *
  * @author myx
- * 
+ *
+ *         BUFFER_BYTES = 8k
+ *
+ *         BUFFER_CHARS = 8k (2x8k bytes)
+ *
  */
 public class WriterOutputStream extends OutputStream {
-	
+
 	private final Writer			writer;
-	
+
+	/**
+	 * NULL for UTF-8
+	 */
 	private final CharsetDecoder	decoder;
-	
+
+	private final char[]			chars;
+
 	private final CharBuffer		charBuffer;
-	
+
 	private final ByteBuffer		byteBuffer;
-	
+
+	private boolean					closed;
+
 	/**
 	 * @param writer
 	 * @param charset
 	 */
 	public WriterOutputStream(final Writer writer, final Charset charset) {
+		this( writer, charset, 8 * 1024, 8 * 1024 );
+	}
+
+	/**
+	 * @param writer
+	 * @param charset
+	 * @param byteBufferCapacity
+	 *            4 * 1024 .. 8 * 1024 .. 64 * 1024
+	 * @param charBufferCapacity
+	 *            4 * 1024 .. 8 * 1024 .. 32 * 1024
+	 */
+	public WriterOutputStream(final Writer writer,
+			final Charset charset,
+			final int byteBufferCapacity,
+			final int charBufferCapacity) {
+		assert writer != null : "NULL writer!";
 		this.writer = writer;
-		this.decoder = charset.newDecoder();
-		this.charBuffer = CharBuffer.allocate( 256 );
-		this.byteBuffer = ByteBuffer.allocate( 256 );
+		this.decoder = StandardCharsets.UTF_8.equals( charset )
+				? null
+				: charset.newDecoder().onMalformedInput( CodingErrorAction.REPLACE )
+						.onUnmappableCharacter( CodingErrorAction.REPLACE );
+		/**
+		 * at least one complete byte sequence and its surrogate pair should
+		 * always fit
+		 */
+		this.chars = new char[Math.max( charBufferCapacity, 16 )];
+		this.charBuffer = CharBuffer.wrap( this.chars );
+		this.byteBuffer = ByteBuffer.allocate( Math.max( byteBufferCapacity, 16 ) );
 	}
-	
+
 	@Override
 	public void close() throws IOException {
-		this.writer.close();
-		super.close();
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.byteBuffer.flip();
+			this.decode( this.byteBuffer, true );
+			this.byteBuffer.clear();
+			if (this.decoder != null) {
+				while (this.decoder.flush( this.charBuffer ).isOverflow()) {
+					this.drainChars();
+				}
+			}
+			this.drainChars();
+		} finally {
+			this.writer.close();
+		}
+	}
+
+	/**
+	 * Decodes given bytes to the char buffer, passing chars to the writer
+	 * every time char buffer gets full. Incomplete byte sequence is left in
+	 * source unless endOfInput is set.
+	 *
+	 * @param in
+	 * @param endOfInput
+	 * @throws IOException
+	 */
+	private void decode(final ByteBuffer in, final boolean endOfInput) throws IOException {
+		if (this.decoder == null) {
+			this.decodeUTF8( in, endOfInput );
+			return;
+		}
+		for (;;) {
+			final CoderResult result = this.decoder.decode( in, this.charBuffer, endOfInput );
+			if (result.isOverflow()) {
+				this.drainChars();
+				continue;
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Decodes bytes collected in the internal buffer, incomplete byte sequence
+	 * (if any) stays at the start of the buffer.
+	 *
+	 * @throws IOException
+	 */
+	private void decodeBuffer() throws IOException {
+		this.byteBuffer.flip();
+		this.decode( this.byteBuffer, false );
+		this.byteBuffer.compact();
+	}
+
+	/**
+	 * Standard (not modified) UTF-8, each maximal malformed subpart is
+	 * replaced with U+FFFD, same as UTF-8 CharsetDecoder does.
+	 *
+	 * @param in
+	 * @param endOfInput
+	 * @throws IOException
+	 */
+	private void decodeUTF8(final ByteBuffer in, final boolean endOfInput) throws IOException {
+		final byte[] source = in.array();
+		final int limit = in.limit();
+		final char[] chars = this.chars;
+		final int capacity = chars.length;
+		int position = in.position();
+		int count = this.charBuffer.position();
+		for (;;) {
+			if (capacity - count < 2) {
+				this.charBuffer.position( count );
+				this.drainChars();
+				count = 0;
+			}
+			{
+				/* ASCII run */
+				final int end = position + Math.min( limit - position, capacity - count );
+				while (position < end) {
+					final byte b = source[position];
+					if (b < 0) {
+						break;
+					}
+					chars[count++] = (char) b;
+					position++;
+				}
+			}
+			if (position >= limit) {
+				break;
+			}
+			if (capacity - count < 2) {
+				continue;
+			}
+			final int c = source[position] & 0xFF;
+			final int need;
+			int min = 0x80;
+			int max = 0xBF;
+			if (c >= 0xC2 && c <= 0xDF) {
+				/* 110x xxxx 10xx xxxx */
+				need = 1;
+			} else if (c >= 0xE0 && c <= 0xEF) {
+				/* 1110 xxxx 10xx xxxx 10xx xxxx */
+				need = 2;
+				if (c == 0xE0) {
+					min = 0xA0;
+				}
+			} else if (c >= 0xF0 && c <= 0xF4) {
+				/* 1111 0xxx 10xx xxxx 10xx xxxx 10xx xxxx */
+				need = 3;
+				if (c == 0xF0) {
+					min = 0x90;
+				} else if (c == 0xF4) {
+					max = 0x8F;
+				}
+			} else {
+				/* 10xx xxxx, 1100 000x, 1111 1xxx */
+				chars[count++] = '\uFFFD';
+				position++;
+				continue;
+			}
+			final int available = limit - position - 1;
+			int valid = 0;
+			for (; valid < need && valid < available; ++valid) {
+				final int b = source[position + 1 + valid] & 0xFF;
+				if (valid == 0
+						? b < min || b > max
+						: (b & 0xC0) != 0x80) {
+					break;
+				}
+			}
+			if (valid < need) {
+				if (valid == available && !endOfInput) {
+					/**
+					 * the rest of the sequence is not written yet
+					 */
+					break;
+				}
+				chars[count++] = '\uFFFD';
+				position += 1 + valid;
+				continue;
+			}
+			switch (need) {
+				case 1 :
+					chars[count++] = (char) ((c & 0x1F) << 6 | source[position + 1] & 0x3F);
+					break;
+				case 2 : {
+					final char decoded = (char) ((c & 0x0F) << 12 | (source[position + 1] & 0x3F) << 6 | source[position + 2] & 0x3F);
+					/**
+					 * encoded surrogate is replaced as a whole
+					 */
+					chars[count++] = Character.isSurrogate( decoded )
+							? '\uFFFD'
+							: decoded;
+					break;
+				}
+				default : {
+					final int code = (c & 0x07) << 18 | (source[position + 1] & 0x3F) << 12 | (source[position + 2] & 0x3F) << 6 | source[position + 3] & 0x3F;
+					chars[count++] = Character.highSurrogate( code );
+					chars[count++] = Character.lowSurrogate( code );
+				}
+			}
+			position += 1 + need;
+		}
+		in.position( position );
+		this.charBuffer.position( count );
 	}
-	
+
+	private void drainChars() throws IOException {
+		final int count = this.charBuffer.position();
+		if (count > 0) {
+			this.writer.write( this.chars, 0, count );
+			this.charBuffer.clear();
+		}
+	}
+
+	/**
+	 * Decodes all complete byte sequences written so far and flushes the
+	 * Writer. Incomplete trailing sequence is kept until the rest of it is
+	 * written.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.byteBuffer.position() > 0) {
+			this.decodeBuffer();
+		}
+		this.drainChars();
+		this.writer.flush();
+	}
+
+	@Override
+	public void write(final byte[] b) throws IOException {
+		this.write( b, 0, b.length );
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		if ((off | len | off + len | b.length - (off + len)) < 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len <= this.byteBuffer.remaining()) {
+			this.byteBuffer.put( b, off, len );
+			if (!this.byteBuffer.hasRemaining()) {
+				this.decodeBuffer();
+			}
+			return;
+		}
+		int offset = off;
+		int length = len;
+		/**
+		 * complete pending sequence byte by byte, so the rest can be decoded
+		 * without copying
+		 */
+		while (this.byteBuffer.position() > 0 && length > 0) {
+			this.byteBuffer.put( b[offset++] );
+			length--;
+			this.decodeBuffer();
+		}
+		if (length > 0) {
+			/**
+			 * wrapped per call, not kept: the array is the caller's
+			 */
+			final ByteBuffer source = ByteBuffer.wrap( b, offset, length );
+			this.decode( source, false );
+			/**
+			 * incomplete trailing sequence, if any
+			 */
+			this.byteBuffer.put( source );
+		}
+		this.drainChars();
+	}
+
 	@Override
 	public void write(final int b) throws IOException {
-		System.out.println( ">>>>>> writeByte: " + this.byteBuffer.remaining() );
 		this.byteBuffer.put( (byte) b );
-		this.byteBuffer.flip();
-		System.out.println( ">>>>>> writeByte result: " + this.byteBuffer.remaining() );
-		
-		this.charBuffer.clear();
-		this.decoder.decode( this.byteBuffer, this.charBuffer, false );
-		this.byteBuffer.compact();
-		this.charBuffer.flip();
-		while (this.charBuffer.hasRemaining()) {
-			this.writer.write( this.charBuffer.get() );
+		if (!this.byteBuffer.hasRemaining()) {
+			this.decodeBuffer();
 		}
 	}
-	
+
 }
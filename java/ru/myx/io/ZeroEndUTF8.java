@@ -9,120 +9,275 @@ public final class ZeroEndUTF8 {
 	 * @param offset
 	 * @param limit
 	 * @param buffer
+	 *            at least (terminator - offset) chars
 	 * @return */
 	public static final String decode(final byte[] source, final int offset, final int limit, final char[] buffer) {
 		
+		return new String(buffer, 0, (int) ZeroEndUTF8.decodeChars(source, offset, limit, buffer));
+	}
+	
+	/** Decodes up to the zero terminator, bytes are read from the current position, the position is
+	 * left after the terminator. The only allocation is the String, the char buffer is borrowed from
+	 * BufferPool and sized by the string, not by the source buffer.
+	 *
+	 * @param source
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             when there is no terminator before the limit, the position is not changed */
+	public static final String decode(final ByteBuffer source) {
+		
+		final int position = source.position();
+		final int terminator = HelperSWAR.indexOfZero(source, position, source.limit());
+		if (terminator == -1) {
+			throw new IllegalArgumentException("unterminated zero-end UTF-8 source, at byte: " + position);
+		}
+		/* chars never outnumber bytes */
+		final char[] buffer = BufferPool.borrowChars(terminator - position);
+		try {
+			return new String(buffer, 0, ZeroEndUTF8.decodeChars(source, buffer));
+		} finally {
+			BufferPool.releaseChars(buffer);
+		}
+	}
+	
+	/** Decodes up to the zero terminator, bytes are read from the current position, the position is
+	 * left after the terminator. Heap and direct buffers are supported, nothing is allocated.
+	 *
+	 * @param source
+	 * @param target
+	 *            at least (terminator - position) chars
+	 * @return number of chars decoded */
+	public static final int decodeChars(final ByteBuffer source, final char[] target) {
+		
+		final long result = ZeroEndUTF8.decodeChars(source, source.position(), source.limit(), target);
+		source.position((int) (result >>> 32) + 1);
+		return (int) result;
+	}
+	
+	/** Decodes up to the zero terminator using absolute indices, never reads at or beyond limit,
+	 * buffer position is not used or changed (safe for concurrent readers of a shared buffer).
+	 * Heap and direct buffers are supported, nothing is allocated.
+	 *
+	 * @param source
+	 * @param offset
+	 *            absolute index
+	 * @param limit
+	 *            absolute index
+	 * @param target
+	 *            at least (terminator - offset) chars
+	 * @return absolute index of the terminator in the high 32 bits and number of chars decoded in
+	 *         the low 32 bits, same as decodeChars(byte[],int,int,char[]) */
+	public static final long decodeChars(final ByteBuffer source, final int offset, final int limit, final char[] target) {
+		
+		if (source.hasArray()) {
+			final int arrayOffset = source.arrayOffset();
+			final long result = ZeroEndUTF8.decodeChars(source.array(), arrayOffset + offset, arrayOffset + limit, target);
+			return result - ((long) arrayOffset << 32);
+		}
 		for (int pos = offset, chars = 0;;) {
-			final int c = source[pos++] & 0xFF;
-			if ((c & 0x80) == 0) {
-				if (c == 0) {
-					return new String(buffer, 0, chars);
+			{
+				/* ASCII run, up to the terminator or first non-ASCII byte */
+				final int run = HelperSWAR.asciiNonZeroLength(source, pos, limit);
+				for (int i = 0; i < run; ++i) {
+					target[chars + i] = (char) source.get(pos + i);
 				}
-				/* 0xxxxxxx */
-				buffer[chars++] = (char) c;
-				continue;
+				pos += run;
+				chars += run;
+			}
+			if (pos >= limit) {
+				throw new IllegalArgumentException("unterminated zero-end UTF-8 source, at char: " + chars);
+			}
+			final int c = source.get(pos++) & 0xFF;
+			if (c == 0) {
+				return (long) (pos - 1) << 32 | chars;
 			}
 			if ((c & 0xE0) == 0xC0) {
 				/* 110x xxxx 10xx xxxx */
-				final int char2 = source[pos++] & 0xFF;
+				if (pos >= limit) {
+					throw new IllegalArgumentException("incomplete zero-end UTF-8 source, at char: " + chars);
+				}
+				final int char2 = source.get(pos++) & 0xFF;
 				if ((char2 & 0xC0) != 0x80) {
-					throw new IllegalArgumentException("malformed input around byte " + pos);
+					throw new IllegalArgumentException("malformed input around byte, at char: " + chars);
 				}
-				buffer[chars++] = (char) ((c & 0x1F) << 6 | char2 & 0x3F);
+				target[chars++] = (char) ((c & 0x1F) << 6 | char2 & 0x3F);
 				continue;
 			}
 			if ((c & 0xF0) == 0xE0) {
 				/* 1110 xxxx 10xx xxxx 10xx xxxx */
-				final int char2 = source[pos++] & 0xFF;
-				final int char3 = source[pos++] & 0xFF;
+				if (limit - pos < 2) {
+					throw new IllegalArgumentException("incomplete zero-end UTF-8 source, at char: " + chars);
+				}
+				final int char2 = source.get(pos++) & 0xFF;
+				final int char3 = source.get(pos++) & 0xFF;
 				if ((char2 & 0xC0) != 0x80 || (char3 & 0xC0) != 0x80) {
-					throw new IllegalArgumentException("malformed input around byte " + (pos - 1));
+					throw new IllegalArgumentException("malformed input around byte, at char: " + chars);
 				}
-				buffer[chars++] = (char) ((c & 0x0F) << 12 | (char2 & 0x3F) << 6 | (char3 & 0x3F) << 0);
+				target[chars++] = (char) ((c & 0x0F) << 12 | (char2 & 0x3F) << 6 | (char3 & 0x3F) << 0);
 				continue;
 			}
 			{
 				/* 10xx xxxx, 1111 xxxx */
-				throw new IllegalArgumentException("malformed input around byte " + pos);
+				throw new IllegalArgumentException("malformed input around byte, at char: " + chars);
 			}
 		}
 	}
 	
-	/** @param source
-	 * @return */
-	public static final String decode(final ByteBuffer source) {
+	/** Decodes up to the zero terminator, never reads at or beyond limit, nothing is allocated.
+	 *
+	 * @param source
+	 * @param offset
+	 * @param limit
+	 * @param target
+	 *            at least (terminator - offset) chars
+	 * @return index of the terminator in the high 32 bits and number of chars decoded in the low 32
+	 *         bits: (int) (result >>> 32) is the terminator, next string (if any) starts right after
+	 *         it, (int) result is the number of chars. */
+	public static final long decodeChars(final byte[] source, final int offset, final int limit, final char[] target) {
 		
-		final StringBuilder builder = new StringBuilder();
-		for (;;) {
-			if (!source.hasRemaining()) {
-				throw new IllegalArgumentException("unterminated zero-end UTF-8 source, at char: " + builder.length());
-			}
-			final int c = source.get() & 0xFF;
-			if ((c & 0x80) == 0) {
-				if (c == 0) {
-					return builder.toString();
+		for (int pos = offset, chars = 0;;) {
+			{
+				/* ASCII run, up to the terminator or first non-ASCII byte */
+				final int run = HelperSWAR.asciiNonZeroLength(source, pos, limit);
+				for (int i = 0; i < run; ++i) {
+					target[chars + i] = (char) source[pos + i];
 				}
-				/* 0xxxxxxx */
-				builder.append((char) c);
-				continue;
+				pos += run;
+				chars += run;
+			}
+			if (pos >= limit) {
+				throw new IllegalArgumentException("unterminated zero-end UTF-8 source, at char: " + chars);
+			}
+			final int c = source[pos++] & 0xFF;
+			if (c == 0) {
+				return (long) (pos - 1) << 32 | chars;
 			}
 			if ((c & 0xE0) == 0xC0) {
 				/* 110x xxxx 10xx xxxx */
-				if (!source.hasRemaining()) {
-					throw new IllegalArgumentException("incomplete zero-end UTF-8 source, at char: " + builder.length());
+				if (pos >= limit) {
+					throw new IllegalArgumentException("incomplete zero-end UTF-8 source, at char: " + chars);
 				}
-				final int char2 = source.get() & 0xFF;
+				final int char2 = source[pos++] & 0xFF;
 				if ((char2 & 0xC0) != 0x80) {
-					throw new IllegalArgumentException("malformed input around byte, at char: " + builder.length());
+					throw new IllegalArgumentException("malformed input around byte " + pos);
 				}
-				builder.append((char) ((c & 0x1F) << 6 | char2 & 0x3F));
+				target[chars++] = (char) ((c & 0x1F) << 6 | char2 & 0x3F);
 				continue;
 			}
 			if ((c & 0xF0) == 0xE0) {
 				/* 1110 xxxx 10xx xxxx 10xx xxxx */
-				if (source.remaining() < 3) {
-					throw new IllegalArgumentException("incomplete zero-end UTF-8 source, at char: " + builder.length());
+				if (limit - pos < 2) {
+					throw new IllegalArgumentException("incomplete zero-end UTF-8 source, at char: " + chars);
 				}
-				final int char2 = source.get() & 0xFF;
-				final int char3 = source.get() & 0xFF;
+				final int char2 = source[pos++] & 0xFF;
+				final int char3 = source[pos++] & 0xFF;
 				if ((char2 & 0xC0) != 0x80 || (char3 & 0xC0) != 0x80) {
-					throw new IllegalArgumentException("malformed input around byte, at char: " + builder.length());
+					throw new IllegalArgumentException("malformed input around byte " + (pos - 1));
 				}
-				builder.append((char) ((c & 0x0F) << 12 | (char2 & 0x3F) << 6 | (char3 & 0x3F) << 0));
+				target[chars++] = (char) ((c & 0x0F) << 12 | (char2 & 0x3F) << 6 | (char3 & 0x3F) << 0);
 				continue;
 			}
 			{
 				/* 10xx xxxx, 1111 xxxx */
-				throw new IllegalArgumentException("malformed input around byte, at char: " + builder.length());
+				throw new IllegalArgumentException("malformed input around byte " + pos);
 			}
 		}
 	}
 	
-	/** @param string
+	/** Encodes string followed by zero terminator. Characters are encoded in 1..3 bytes each, '\0'
+	 * as two bytes, so the only zero byte is the terminator.
+	 *
+	 * @param string
 	 * @param offset
 	 * @param limit
 	 * @param target
-	 * @return */
+	 * @return number of bytes written, terminator included
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             when encoded string does not fit before limit, see encodeBounded() */
 	public static final int encode(final String string, final int offset, final int limit, final byte[] target) {
 		
+		final int written = ZeroEndUTF8.encodeBounded(string, offset, limit, target);
+		if (written == -1) {
+			throw new ArrayIndexOutOfBoundsException("zero-end UTF-8 target overflow, limit: " + limit + ", required: " + ZeroEndUTF8.encodedLength(string));
+		}
+		return written;
+	}
+	
+	/** Encodes string followed by zero terminator, never writes at or beyond limit. Does not check
+	 * every byte when the worst case (3 bytes per char) fits.
+	 *
+	 * @param string
+	 * @param offset
+	 * @param limit
+	 * @param target
+	 * @return number of bytes written, terminator included, or -1 when encoded string does not fit
+	 *         (bytes between offset and limit are undefined then) */
+	public static final int encodeBounded(final CharSequence string, final int offset, final int limit, final byte[] target) {
+		
 		final int strlen = string.length();
+		if (limit - offset < strlen + 1) {
+			return -1;
+		}
+		final boolean checked = limit - offset < strlen * 3L + 1;
 		int index = offset;
 		for (int i = 0; i < strlen; ++i) {
 			final char c = string.charAt(i);
 			if (c >= 0x0001 && c <= 0x007F) {
+				if (checked && index >= limit) {
+					return -1;
+				}
 				target[index++] = (byte) c;
 				continue;
 			}
 			if (c > 0x07FF) {
+				if (checked && limit - index < 3) {
+					return -1;
+				}
 				target[index++] = (byte) (0xE0 | c >> 12 & 0x0F);
 				target[index++] = (byte) (0x80 | c >> 6 & 0x3F);
 				target[index++] = (byte) (0x80 | c >> 0 & 0x3F);
 				continue;
 			}
+			if (checked && limit - index < 2) {
+				return -1;
+			}
 			target[index++] = (byte) (0xC0 | c >> 6 & 0x1F);
 			target[index++] = (byte) (0x80 | c >> 0 & 0x3F);
 		}
+		if (index >= limit) {
+			return -1;
+		}
 		target[index++] = 0;
 		return index - offset;
 	}
+	
+	/** @param string
+	 * @return number of bytes encode() writes for given string, terminator included, long: up to 3
+	 *         bytes per char do not fit int for long strings */
+	public static final long encodedLength(final CharSequence string) {
+		
+		final int strlen = string.length();
+		long length = strlen + 1L;
+		for (int i = 0; i < strlen; ++i) {
+			final char c = string.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				continue;
+			}
+			length += c > 0x07FF
+				? 2
+				: 1;
+		}
+		return length;
+	}
+	
+	/** Finds zero terminator, word at a time where supported.
+	 *
+	 * @param source
+	 * @param offset
+	 * @param limit
+	 * @return index of the first zero byte in offset..limit range or -1 */
+	public static final int terminator(final byte[] source, final int offset, final int limit) {
+		
+		return HelperSWAR.indexOfZero(source, offset, limit);
+	}
 }
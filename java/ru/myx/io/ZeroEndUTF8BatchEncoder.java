@@ -0,0 +1,114 @@
+package ru.myx.io;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Packs many zero-end UTF-8 strings (see ZeroEndUTF8) into one growable byte array in one pass.
+ * The target only grows to the exact required size when the worst case (3 bytes per char) of the
+ * next string does not fit, no retries and no over-allocation per string. Reusable: reset() keeps
+ * the array, an existing (pooled) array can be given to the constructor.
+ *
+ * @author myx */
+public final class ZeroEndUTF8BatchEncoder {
+	
+	/** Largest array the VM reliably allocates */
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+	
+	private byte[] buffer;
+	
+	private int length;
+	
+	/**
+	 *
+	 */
+	public ZeroEndUTF8BatchEncoder() {
+		
+		this.buffer = new byte[4 * 1024];
+	}
+	
+	/** @param buffer
+	 *            initial target, replaced by a bigger one when it gets full */
+	public ZeroEndUTF8BatchEncoder(final byte[] buffer) {
+		
+		this.buffer = buffer;
+	}
+	
+	/** @param capacity
+	 *            initial capacity */
+	public ZeroEndUTF8BatchEncoder(final int capacity) {
+		
+		this.buffer = new byte[capacity];
+	}
+	
+	/** @param string
+	 * @return offset of the encoded string
+	 * @throws OutOfMemoryError
+	 *             when the batch would not fit a byte array */
+	public final int add(final CharSequence string) {
+		
+		final int offset = this.length;
+		if (this.buffer.length - offset < string.length() * 3L + 1) {
+			final long required = offset + ZeroEndUTF8.encodedLength(string);
+			if (required > ZeroEndUTF8BatchEncoder.MAX_CAPACITY) {
+				throw new OutOfMemoryError("zero-end UTF-8 batch too large, required: " + required + ", max: " + ZeroEndUTF8BatchEncoder.MAX_CAPACITY);
+			}
+			if (required > this.buffer.length) {
+				final byte[] buffer = new byte[(int) Math.min(Math.max(required, this.buffer.length * 2L), ZeroEndUTF8BatchEncoder.MAX_CAPACITY)];
+				System.arraycopy(this.buffer, 0, buffer, 0, offset);
+				this.buffer = buffer;
+			}
+		}
+		final int written = ZeroEndUTF8.encodeBounded(string, offset, this.buffer.length, this.buffer);
+		if (written == -1) {
+			throw new IllegalStateException("zero-end UTF-8 batch target overflow, offset: " + offset + ", capacity: " + this.buffer.length);
+		}
+		this.length = offset + written;
+		return offset;
+	}
+	
+	/** @param strings
+	 * @param offsets
+	 *            receives offset of each string when not NULL */
+	public final void addAll(final CharSequence[] strings, final int[] offsets) {
+		
+		for (int i = 0; i < strings.length; ++i) {
+			final int offset = this.add(strings[i]);
+			if (offsets != null) {
+				offsets[i] = offset;
+			}
+		}
+	}
+	
+	/** @return current target, valid up to getLength() */
+	public final byte[] getBuffer() {
+		
+		return this.buffer;
+	}
+	
+	/** @return number of bytes encoded */
+	public final int getLength() {
+		
+		return this.length;
+	}
+	
+	/** Clears encoded data, target array is kept */
+	public final void reset() {
+		
+		this.length = 0;
+	}
+	
+	/** @return copy of encoded data */
+	public final byte[] toByteArray() {
+		
+		final byte[] result = new byte[this.length];
+		System.arraycopy(this.buffer, 0, result, 0, this.length);
+		return result;
+	}
+	
+	/** @param output
+	 * @throws IOException */
+	public final void writeTo(final DataOutput output) throws IOException {
+		
+		output.write(this.buffer, 0, this.length);
+	}
+}
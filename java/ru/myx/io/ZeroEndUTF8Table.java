@@ -0,0 +1,235 @@
+package ru.myx.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Packed table of zero-end UTF-8 strings (see ZeroEndUTF8) with an offset index. Strings are
+ * decoded on demand, get(i) is O(1). Entries can be compared with a String and searched without
+ * decoding. Immutable, safe for concurrent readers.
+ *
+ * Serialized layout (big-endian), as produced by ZeroEndUTF8TableBuilder:
+ *
+ * int count, int flags, int blobLength, int[count] offsets (relative to blob start),
+ * byte[blobLength] blob
+ *
+ * Entry order used by compare() and indexOf() is unsigned byte order of encoded strings, it is the
+ * same as String.compareTo() order for strings without '\0' chars.
+ *
+ * @author myx */
+public final class ZeroEndUTF8Table {
+	
+	/** Flags bit: entries are in ascending order */
+	public static final int FLAG_SORTED = 1;
+	
+	private static final int HEADER_SIZE = 12;
+	
+	/** @param path
+	 * @param cache
+	 *            keep decoded strings
+	 * @return table over read-only mapping of the whole file
+	 * @throws IOException */
+	public static final ZeroEndUTF8Table map(final Path path, final boolean cache) throws IOException {
+		
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return ZeroEndUTF8Table.wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), cache);
+		}
+	}
+	
+	/** @param strings
+	 * @return table (without cache) containing given strings in the same order */
+	public static final ZeroEndUTF8Table pack(final String... strings) {
+		
+		final ZeroEndUTF8TableBuilder builder = new ZeroEndUTF8TableBuilder(strings.length, strings.length * 16);
+		for (final String string : strings) {
+			builder.add(string);
+		}
+		return builder.build(false);
+	}
+	
+	/** @param serialized
+	 * @param cache
+	 *            keep decoded strings
+	 * @return table over given array, not copied */
+	public static final ZeroEndUTF8Table wrap(final byte[] serialized, final boolean cache) {
+		
+		return ZeroEndUTF8Table.wrap(ByteBuffer.wrap(serialized), cache);
+	}
+	
+	/** @param serialized
+	 *            heap, direct or mapped buffer, table starts at current position
+	 * @param cache
+	 *            keep decoded strings
+	 * @return table over given buffer, not copied, buffer position is not changed */
+	public static final ZeroEndUTF8Table wrap(final ByteBuffer serialized, final boolean cache) {
+		
+		return new ZeroEndUTF8Table(serialized.duplicate(), serialized.position(), cache);
+	}
+	
+	private final ByteBuffer buffer;
+	
+	private final int count;
+	
+	private final int flags;
+	
+	private final int indexStart;
+	
+	private final int blobStart;
+	
+	private final int blobLimit;
+	
+	private final String[] cache;
+	
+	private ZeroEndUTF8Table(final ByteBuffer buffer, final int start, final boolean cache) {
+		
+		this.buffer = buffer;
+		this.count = buffer.getInt(start);
+		this.flags = buffer.getInt(start + 4);
+		final int blobLength = buffer.getInt(start + 8);
+		this.indexStart = start + ZeroEndUTF8Table.HEADER_SIZE;
+		this.blobStart = this.indexStart + 4 * this.count;
+		this.blobLimit = this.blobStart + blobLength;
+		if (this.count < 0 || blobLength < 0 || this.blobLimit > buffer.limit() || this.blobLimit < this.blobStart) {
+			throw new IllegalArgumentException("invalid zero-end UTF-8 table, count: " + this.count + ", blobLength: " + blobLength);
+		}
+		this.cache = cache
+			? new String[this.count]
+			: null;
+	}
+	
+	/** Compares entry with given string without decoding, string is encoded on the fly.
+	 *
+	 * @param index
+	 * @param key
+	 * @return negative, zero or positive when entry is less than, equal to or greater than key */
+	public final int compare(final int index, final String key) {
+		
+		final ByteBuffer buffer = this.buffer;
+		int pos = this.offset(index);
+		final int strlen = key.length();
+		for (int i = 0; i < strlen; ++i) {
+			final char c = key.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				final int b = buffer.get(pos++) & 0xFF;
+				if (b != c) {
+					return b - c;
+				}
+				continue;
+			}
+			if (c > 0x07FF) {
+				int b = buffer.get(pos++) & 0xFF;
+				int e = 0xE0 | c >> 12 & 0x0F;
+				if (b != e) {
+					return b - e;
+				}
+				b = buffer.get(pos++) & 0xFF;
+				e = 0x80 | c >> 6 & 0x3F;
+				if (b != e) {
+					return b - e;
+				}
+				b = buffer.get(pos++) & 0xFF;
+				e = 0x80 | c >> 0 & 0x3F;
+				if (b != e) {
+					return b - e;
+				}
+				continue;
+			}
+			int b = buffer.get(pos++) & 0xFF;
+			int e = 0xC0 | c >> 6 & 0x1F;
+			if (b != e) {
+				return b - e;
+			}
+			b = buffer.get(pos++) & 0xFF;
+			e = 0x80 | c >> 0 & 0x3F;
+			if (b != e) {
+				return b - e;
+			}
+		}
+		/* key is exhausted, entry is either equal or longer */
+		return buffer.get(pos) == 0
+			? 0
+			: 1;
+	}
+	
+	/** @param index
+	 * @return decoded entry, cached when table was created with cache */
+	public final String get(final int index) {
+		
+		final String[] cache = this.cache;
+		if (cache == null) {
+			return this.decode(index);
+		}
+		final String cached = cache[index];
+		if (cached != null) {
+			return cached;
+		}
+		/* racy but benign, strings are immutable */
+		return cache[index] = this.decode(index);
+	}
+	
+	/** @param key
+	 * @return index of the entry equal to key (binary search when sorted, linear scan otherwise) or
+	 *         -(insertion point) - 1 when sorted and not found, or -1 when not sorted and not
+	 *         found */
+	public final int indexOf(final String key) {
+		
+		if ((this.flags & ZeroEndUTF8Table.FLAG_SORTED) == 0) {
+			for (int i = 0; i < this.count; ++i) {
+				if (this.compare(i, key) == 0) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		int low = 0;
+		int high = this.count - 1;
+		while (low <= high) {
+			final int middle = low + high >>> 1;
+			final int compare = this.compare(middle, key);
+			if (compare < 0) {
+				low = middle + 1;
+			} else //
+			if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+	
+	/** @return true when entries are in ascending order, see compare() */
+	public final boolean isSorted() {
+		
+		return (this.flags & ZeroEndUTF8Table.FLAG_SORTED) != 0;
+	}
+	
+	/** @return number of entries */
+	public final int size() {
+		
+		return this.count;
+	}
+	
+	private final String decode(final int index) {
+		
+		final int offset = this.offset(index);
+		final int limit = index + 1 < this.count
+			? this.offset(index + 1)
+			: this.blobLimit;
+		/* chars never outnumber bytes, terminator included */
+		final char[] chars = new char[limit - offset - 1];
+		return new String(chars, 0, (int) ZeroEndUTF8.decodeChars(this.buffer, offset, limit, chars));
+	}
+	
+	/** @param index
+	 * @return absolute index of the entry in buffer */
+	private final int offset(final int index) {
+		
+		if (index < 0 || index >= this.count) {
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + this.count);
+		}
+		return this.blobStart + this.buffer.getInt(this.indexStart + 4 * index);
+	}
+}
@@ -0,0 +1,140 @@
+package ru.myx.io;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Packs strings into one blob of zero-end UTF-8 strings plus an int offset index, see
+ * ZeroEndUTF8Table for the layout. Tracks whether strings were added in ascending order, sorted
+ * tables are searched with binary search.
+ *
+ * @author myx */
+public final class ZeroEndUTF8TableBuilder {
+	
+	private final ZeroEndUTF8BatchEncoder blob;
+	
+	private int[] offsets;
+	
+	private int count;
+	
+	private boolean sorted;
+	
+	/**
+	 *
+	 */
+	public ZeroEndUTF8TableBuilder() {
+		
+		this(256, 4 * 1024);
+	}
+	
+	/** @param expectedCount
+	 * @param expectedBytes */
+	public ZeroEndUTF8TableBuilder(final int expectedCount, final int expectedBytes) {
+		
+		this.offsets = new int[Math.max(expectedCount, 16)];
+		this.blob = new ZeroEndUTF8BatchEncoder(Math.max(expectedBytes, 64));
+		this.sorted = true;
+	}
+	
+	/** @param string
+	 * @return index of added entry */
+	public final int add(final CharSequence string) {
+		
+		if (this.count == this.offsets.length) {
+			final int[] offsets = new int[this.count * 2];
+			System.arraycopy(this.offsets, 0, offsets, 0, this.count);
+			this.offsets = offsets;
+		}
+		final int offset = this.blob.add(string);
+		if (this.sorted && this.count > 0 && this.compareWithPrevious(offset) > 0) {
+			this.sorted = false;
+		}
+		this.offsets[this.count] = offset;
+		return this.count++;
+	}
+	
+	/** @param cache
+	 *            keep decoded strings
+	 * @return table over a copy of current data, builder can be used further */
+	public final ZeroEndUTF8Table build(final boolean cache) {
+		
+		return ZeroEndUTF8Table.wrap(this.toByteArray(), cache);
+	}
+	
+	/** @return true when strings were added in ascending order so far */
+	public final boolean isSorted() {
+		
+		return this.sorted;
+	}
+	
+	/** Clears builder, buffers are kept */
+	public final void reset() {
+		
+		this.count = 0;
+		this.blob.reset();
+		this.sorted = true;
+	}
+	
+	/** @return number of entries added */
+	public final int size() {
+		
+		return this.count;
+	}
+	
+	/** @return serialized table, see ZeroEndUTF8Table */
+	public final byte[] toByteArray() {
+		
+		final DataOutputByteArrayReusable output = new DataOutputByteArrayReusable(12 + 4 * this.count + 1, 16);
+		output.writeInt(this.count);
+		output.writeInt(this.getFlags());
+		output.writeInt(this.blob.getLength());
+		for (int i = 0; i < this.count; ++i) {
+			output.writeInt(this.offsets[i]);
+		}
+		final int headerLength = output.getPosition();
+		final int blobLength = this.blob.getLength();
+		final byte[] result = new byte[headerLength + blobLength];
+		System.arraycopy(output.getBuffer(), 0, result, 0, headerLength);
+		System.arraycopy(this.blob.getBuffer(), 0, result, headerLength, blobLength);
+		return result;
+	}
+	
+	/** Writes serialized table, see ZeroEndUTF8Table
+	 *
+	 * @param output
+	 * @throws IOException */
+	public final void writeTo(final DataOutput output) throws IOException {
+		
+		output.writeInt(this.count);
+		output.writeInt(this.getFlags());
+		output.writeInt(this.blob.getLength());
+		for (int i = 0; i < this.count; ++i) {
+			output.writeInt(this.offsets[i]);
+		}
+		this.blob.writeTo(output);
+	}
+	
+	/** @param offset
+	 *            of the last entry
+	 * @return unsigned byte comparison of previous entry with the last one */
+	private final int compareWithPrevious(final int offset) {
+		
+		final byte[] blob = this.blob.getBuffer();
+		for (int previous = this.offsets[this.count - 1], current = offset;; ++previous, ++current) {
+			final int a = blob[previous] & 0xFF;
+			final int b = blob[current] & 0xFF;
+			if (a != b) {
+				return a - b;
+			}
+			if (a == 0) {
+				return 0;
+			}
+		}
+	}
+	
+	private final int getFlags() {
+		
+		return this.sorted
+			? ZeroEndUTF8Table.FLAG_SORTED
+			: 0;
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package ru.myx.io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/** Hooks for JFR events on operations of streams underlying DataInputBufferedReusable and
+ * DataOutputBufferedReusable.
+ *
+ * Java 11+ version (multi-release). Events are only created while a recording has
+ * 'ru.myx.io.UnderlyingIO' enabled, and only committed when the operation took longer than the
+ * threshold, 20 ms unless changed in recording settings, for example:
+ *
+ * -XX:StartFlightRecording:settings=default.jfc,ru.myx.io.UnderlyingIO#threshold=5ms
+ *
+ * @author myx */
+final class BufferedStreamEvents {
+
+	@Name("ru.myx.io.UnderlyingIO")
+	@Label("Underlying Stream I/O")
+	@Category({
+			"Java Application", "ru.myx.io"
+	})
+	@Description("Read, write, flush or close of the stream underlying a buffered data input or output")
+	@Threshold("20 ms")
+	static final class UnderlyingIoEvent extends Event {
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+		@Label("Stream Class")
+		Class<?> streamClass;
+	}
+
+	/** Underlying stream closed */
+	static final String OPERATION_CLOSE = "close";
+
+	/** Underlying stream flushed */
+	static final String OPERATION_FLUSH = "flush";
+
+	/** Underlying stream read */
+	static final String OPERATION_READ = "read";
+
+	/** Underlying stream written */
+	static final String OPERATION_WRITE = "write";
+
+	/** Not a compile-time constant on purpose: callers must read the value of the class version
+	 * loaded at runtime. FALSE when JFR is not available in this VM. */
+	static final boolean ENABLED;
+
+	/** Checked before an event is created, so nothing is allocated while no recording has it
+	 * enabled. NULL when JFR is not available. */
+	private static final EventType TYPE;
+
+	static {
+		EventType type;
+		try {
+			type = EventType.getEventType(UnderlyingIoEvent.class);
+		} catch (final Throwable t) {
+			type = null;
+		}
+		TYPE = type;
+		ENABLED = type != null;
+	}
+
+	/** @return event to pass to end() or NULL when events are not recorded */
+	static final Object begin() {
+
+		if (!BufferedStreamEvents.TYPE.isEnabled()) {
+			return null;
+		}
+		final UnderlyingIoEvent event = new UnderlyingIoEvent();
+		event.begin();
+		return event;
+	}
+
+	/** @param event
+	 *            non-NULL result of begin()
+	 * @param operation
+	 * @param bytes
+	 * @param stream */
+	static final void end(final Object event, final String operation, final long bytes, final Object stream) {
+
+		final UnderlyingIoEvent io = (UnderlyingIoEvent) event;
+		io.end();
+		if (io.shouldCommit()) {
+			io.operation = operation;
+			io.bytes = bytes;
+			io.streamClass = stream == null
+				? null
+				: stream.getClass();
+			io.commit();
+		}
+	}
+
+	private BufferedStreamEvents() {
+
+		// prevent
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ *
+ */
+package ru.myx.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Scanning helpers for UTF-8 decoding loops: lengths of ASCII runs and position of the zero
+ * terminator.
+ *
+ * Java 9+ version (multi-release): reads eight bytes at a time with little-endian VarHandle long
+ * loads, so the first matching byte is the lowest flagged one.
+ *
+ * For a word w, (w & HIGH) flags bytes with high bit set, ((w - LOW) & ~w & HIGH) flags zero
+ * bytes, (w | w - LOW) & HIGH flags both at once. Borrows only travel up from a flagged byte, so
+ * the lowest flag is always exact.
+ *
+ * @author myx */
+final class HelperSWAR {
+
+	private static final long HIGH = 0x8080808080808080L;
+
+	private static final long LOW = 0x0101010101010101L;
+
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	/** @param bytes
+	 * @param from
+	 * @param to
+	 * @return number of leading bytes in from..to range with high bit clear */
+	static final int asciiLength(final byte[] bytes, final int from, final int to) {
+
+		int index = from;
+		for (; to - index >= 8; index += 8) {
+			final long flags = (long) HelperSWAR.LONGS.get(bytes, index) & HelperSWAR.HIGH;
+			if (flags != 0) {
+				return index - from + (Long.numberOfTrailingZeros(flags) >>> 3);
+			}
+		}
+		while (index < to && bytes[index] >= 0) {
+			++index;
+		}
+		return index - from;
+	}
+
+	/** @param buffer
+	 * @param from
+	 *            absolute index
+	 * @param to
+	 *            absolute index
+	 * @return number of leading bytes in from..to range with high bit clear and not zero */
+	static final int asciiNonZeroLength(final ByteBuffer buffer, final int from, final int to) {
+
+		final boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+		int index = from;
+		for (; to - index >= 8; index += 8) {
+			/* borrows must travel from lower addresses up */
+			final long word = littleEndian
+				? buffer.getLong(index)
+				: Long.reverseBytes(buffer.getLong(index));
+			final long flags = (word | word - HelperSWAR.LOW) & HelperSWAR.HIGH;
+			if (flags != 0) {
+				return index - from + (Long.numberOfTrailingZeros(flags) >>> 3);
+			}
+		}
+		for (byte b; index < to && (b = buffer.get(index)) > 0;) {
+			++index;
+		}
+		return index - from;
+	}
+
+	/** @param bytes
+	 * @param from
+	 * @param to
+	 * @return number of leading bytes in from..to range with high bit clear and not zero */
+	static final int asciiNonZeroLength(final byte[] bytes, final int from, final int to) {
+
+		int index = from;
+		for (; to - index >= 8; index += 8) {
+			final long word = (long) HelperSWAR.LONGS.get(bytes, index);
+			final long flags = (word | word - HelperSWAR.LOW) & HelperSWAR.HIGH;
+			if (flags != 0) {
+				return index - from + (Long.numberOfTrailingZeros(flags) >>> 3);
+			}
+		}
+		while (index < to && bytes[index] > 0) {
+			++index;
+		}
+		return index - from;
+	}
+
+	/** @param buffer
+	 * @param from
+	 *            absolute index
+	 * @param to
+	 *            absolute index
+	 * @return absolute index of first zero byte in from..to range or -1 */
+	static final int indexOfZero(final ByteBuffer buffer, final int from, final int to) {
+
+		final boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+		int index = from;
+		for (; to - index >= 8; index += 8) {
+			/* borrows must travel from lower addresses up */
+			final long word = littleEndian
+				? buffer.getLong(index)
+				: Long.reverseBytes(buffer.getLong(index));
+			final long flags = word - HelperSWAR.LOW & ~word & HelperSWAR.HIGH;
+			if (flags != 0) {
+				return index + (Long.numberOfTrailingZeros(flags) >>> 3);
+			}
+		}
+		for (; index < to; ++index) {
+			if (buffer.get(index) == 0) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/** @param bytes
+	 * @param from
+	 * @param to
+	 * @return index of first zero byte in from..to range or -1 */
+	static final int indexOfZero(final byte[] bytes, final int from, final int to) {
+
+		int index = from;
+		for (; to - index >= 8; index += 8) {
+			final long word = (long) HelperSWAR.LONGS.get(bytes, index);
+			final long flags = word - HelperSWAR.LOW & ~word & HelperSWAR.HIGH;
+			if (flags != 0) {
+				return index + (Long.numberOfTrailingZeros(flags) >>> 3);
+			}
+		}
+		for (; index < to; ++index) {
+			if (bytes[index] == 0) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private HelperSWAR() {
+
+		// prevent
+	}
+}